@@ -0,0 +1,67 @@
+package ru.itmentor.spring.boot_security.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import ru.itmentor.spring.boot_security.demo.configs.SuccessUserHandler;
+import ru.itmentor.spring.boot_security.demo.service.RoleIndex;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Выбор страницы после входа: маска ролей из authorities и редирект
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SuccessUserHandlerBenchmark {
+
+    private final InMemoryRoleService roleService = new InMemoryRoleService(InMemoryRoleService.defaultRoles());
+    private final SuccessUserHandler handler = new SuccessUserHandler(roleService);
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    private Authentication admin;
+    private Authentication user;
+
+    @Setup
+    public void setUp() {
+        // Authorities как после входа: флайвейты RoleIndex
+        RoleIndex roles = roleService.index();
+        admin = new UsernamePasswordAuthenticationToken("admin", null,
+                roles.authorities(roles.bit("ROLE_USER") | roles.bit("ROLE_ADMIN")));
+        user = new UsernamePasswordAuthenticationToken("user", null,
+                roles.authorities(roles.bit("ROLE_USER")));
+    }
+
+    @Benchmark
+    public String admin() throws IOException {
+        return redirect(admin);
+    }
+
+    @Benchmark
+    public String user() throws IOException {
+        return redirect(user);
+    }
+
+    private String redirect(Authentication authentication) throws IOException {
+        // sendRedirect фиксирует ответ; сбрасываем, чтобы переиспользовать его без лишних аллокаций
+        response.setCommitted(false);
+        response.reset();
+        handler.onAuthenticationSuccess(request, response, authentication);
+        return response.getRedirectedUrl();
+    }
+}
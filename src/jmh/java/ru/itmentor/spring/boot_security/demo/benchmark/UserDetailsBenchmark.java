@@ -0,0 +1,124 @@
+package ru.itmentor.spring.boot_security.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import ru.itmentor.spring.boot_security.demo.model.Role;
+import ru.itmentor.spring.boot_security.demo.model.User;
+import ru.itmentor.spring.boot_security.demo.service.RoleIndex;
+import ru.itmentor.spring.boot_security.demo.service.UserDetailsServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Загрузка UserDetails (маппинг ролей в GrantedAuthority), User.hasRole и проверка роли маской RoleIndex.
+// uncached - каждый вызов идёт в репозиторий и заново строит authorities, cached - попадание в Caffeine
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserDetailsBenchmark {
+
+    private static final int USERS = 1_000;
+
+    @Param({"2", "16"})
+    public int rolesPerUser;
+
+    private UserDetailsServiceImpl cachedService;
+    private UserDetailsServiceImpl uncachedService;
+    private User user;
+    private String firstRole;
+    private String lastRole;
+    private RoleIndex roleIndex;
+    private Collection<? extends GrantedAuthority> authorities;
+    private long lastRoleBit;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Role> roles = new ArrayList<>();
+        roles.addAll(InMemoryRoleService.defaultRoles());
+        for (long id = roles.size() + 1; roles.size() < rolesPerUser; id++) {
+            roles.add(new Role(id, "ROLE_EXTRA_" + id, null));
+        }
+        roles = roles.subList(0, rolesPerUser);
+
+        List<User> users = new ArrayList<>(USERS);
+        for (long id = 1; id <= USERS; id++) {
+            User account = new User();
+            account.setId(id);
+            account.setUsername("user" + id);
+            account.setPassword("{noop}password");
+            account.setName("Name" + id);
+            account.setLastName("LastName" + id);
+            account.setAge(30);
+            account.setVersion(0L);
+            account.setRoles(new HashSet<>(roles));
+            users.add(account);
+        }
+
+        InMemoryRoleService roleService = new InMemoryRoleService(roles);
+        cachedService = new UserDetailsServiceImpl(InMemoryUserRepository.of(users), roleService,
+                "maximumSize=10000,expireAfterAccess=10m");
+        uncachedService = new UserDetailsServiceImpl(InMemoryUserRepository.of(users), roleService,
+                "maximumSize=0");
+        user = users.get(0);
+        firstRole = roles.get(0).getName();
+        lastRole = roles.get(roles.size() - 1).getName();
+        roleIndex = roleService.index();
+        authorities = cachedService.loadUserByUsername("user1").getAuthorities();
+        lastRoleBit = roleIndex.bit(lastRole);
+    }
+
+    private String nextUsername() {
+        next = next == USERS ? 1 : next + 1;
+        return "user" + next;
+    }
+
+    @Benchmark
+    public UserDetails loadUserCached() {
+        return cachedService.loadUserByUsername(nextUsername());
+    }
+
+    @Benchmark
+    public UserDetails loadUserUncached() {
+        return uncachedService.loadUserByUsername(nextUsername());
+    }
+
+    @Benchmark
+    public boolean hasRoleFirst() {
+        return user.hasRole(firstRole);
+    }
+
+    @Benchmark
+    public boolean hasRoleLast() {
+        return user.hasRole(lastRole);
+    }
+
+    @Benchmark
+    public boolean hasRoleMissing() {
+        return user.hasRole("ROLE_MISSING");
+    }
+
+    // Как @PreAuthorize("hasRole(...)"): маска из authorities аутентификации и AND
+    @Benchmark
+    public boolean maskHasRoleLast() {
+        return RoleIndex.hasAny(roleIndex.maskOf(authorities), lastRoleBit);
+    }
+}
@@ -0,0 +1,117 @@
+package ru.itmentor.spring.boot_security.demo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.itmentor.spring.boot_security.demo.dto.UserPage;
+import ru.itmentor.spring.boot_security.demo.dto.UserPageSerializer;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.model.Role;
+import ru.itmentor.spring.boot_security.demo.model.User;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Страница пользователей в JSON: старый путь UserRestController (HashMap на пользователя + Jackson по Map)
+// против UserPageSerializer. Байты на страницу - gc.alloc.rate.norm из -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserJsonBenchmark {
+
+    @Param({"50", "500"})
+    public int pageSize;
+
+    private final ObjectMapper mapMapper = new ObjectMapper();
+    private ObjectMapper pageMapper;
+    private List<User> entities;
+    private UserPage page;
+
+    @Setup
+    public void setUp() {
+        List<Role> roles = InMemoryRoleService.defaultRoles();
+        entities = new ArrayList<>(pageSize);
+        List<UserView> views = new ArrayList<>(pageSize);
+        for (long id = 1; id <= pageSize; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setUsername("user" + id);
+            user.setName("Name" + id);
+            user.setLastName("LastName" + id);
+            user.setAge((int) (20 + id % 50));
+            user.setRoles(Set.copyOf(id % 10 == 0 ? roles : roles.subList(1, 2)));
+            entities.add(user);
+            views.add(new UserView(user.getId(), user.getUsername(), user.getName(), user.getLastName(),
+                    user.getAge(), 0L, user.getRoles().stream().map(Role::getName).collect(Collectors.toList())));
+        }
+
+        pageMapper = new ObjectMapper().registerModule(new SimpleModule()
+                .addSerializer(UserPage.class, new UserPageSerializer(new InMemoryRoleService(roles))));
+        page = new UserPage(views, true, (long) pageSize, "/api/users?after=" + pageSize, null, UserView.FIELDS);
+    }
+
+    @Benchmark
+    public void hashMapPerUser() throws IOException {
+        mapMapper.writeValue(NullOutputStream.INSTANCE, mapResponse(entities));
+    }
+
+    @Benchmark
+    public void userPageSerializer() throws IOException {
+        pageMapper.writeValue(NullOutputStream.INSTANCE, page);
+    }
+
+    // Так ответ строился до UserPageSerializer
+    private static Map<String, Object> mapResponse(List<User> users) {
+        List<Map<String, Object>> userList = users.stream()
+                .map(user -> {
+                    Map<String, Object> userMap = new HashMap<>();
+                    userMap.put("id", user.getId());
+                    userMap.put("username", user.getUsername());
+                    userMap.put("name", user.getName());
+                    userMap.put("lastName", user.getLastName());
+                    userMap.put("age", user.getAge());
+                    userMap.put("roles", user.getRoles().stream()
+                            .map(Role::getName)
+                            .collect(Collectors.toList()));
+                    return userMap;
+                })
+                .collect(Collectors.toList());
+        return Map.of(
+                "status", "success",
+                "count", userList.size(),
+                "users", userList
+        );
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
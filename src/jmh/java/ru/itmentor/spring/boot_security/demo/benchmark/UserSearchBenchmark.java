@@ -0,0 +1,88 @@
+package ru.itmentor.spring.boot_security.demo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.service.UserSearchIndex;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Поиск по индексу на миллионе пользователей с повторяющимися именами и фамилиями:
+// логин, частая фамилия, два слова и короткие префиксы из списков лучших; те же запросы с редкой ролью
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserSearchBenchmark {
+
+    private static final String[] NAMES = {
+            "Aleksandr", "Aleksei", "Andrei", "Anton", "Artem", "Boris", "Vadim", "Valentin", "Vasilii", "Viktor",
+            "Vladimir", "Vladislav", "Gennadii", "Georgii", "Grigorii", "Daniil", "Denis", "Dmitrii", "Evgenii",
+            "Egor", "Ivan", "Igor", "Ilia", "Kirill", "Konstantin", "Leonid", "Maksim", "Mikhail", "Nikita",
+            "Nikolai", "Oleg", "Pavel", "Petr", "Roman", "Sergei", "Stanislav", "Stepan", "Timur", "Fedor", "Iurii",
+            "Alena", "Alina", "Anastasiia", "Anna", "Valeriia", "Varvara", "Galina", "Daria", "Ekaterina", "Elena",
+            "Irina", "Kristina", "Larisa", "Liudmila", "Marina", "Mariia", "Natalia", "Olga", "Polina", "Svetlana",
+            "Sofiia", "Tatiana", "Iuliia"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Ivanov", "Smirnov", "Kuznetsov", "Popov", "Vasiliev", "Petrov", "Sokolov", "Mikhailov", "Novikov",
+            "Fedorov", "Morozov", "Volkov", "Alekseev", "Lebedev", "Semenov", "Egorov", "Pavlov", "Kozlov",
+            "Stepanov", "Nikolaev", "Orlov", "Andreev", "Makarov", "Nikitin", "Zakharov", "Zaitsev", "Soloviev",
+            "Borisov", "Iakovlev", "Grigoriev", "Romanov", "Vorobiev", "Sergeev", "Kuzmin", "Frolov", "Aleksandrov",
+            "Dmitriev", "Korolev", "Gusev", "Kiselev", "Ilin", "Maksimov", "Poliakov", "Sorokin", "Vinogradov",
+            "Kovalev", "Belov", "Medvedev", "Antonov", "Tarasov", "Zhukov", "Baranov", "Filippov", "Komarov",
+            "Davydov", "Beliaev", "Gerasimov", "Bogdanov", "Osipov", "Sidorov"
+    };
+
+    @Param({"1000000"})
+    public int users;
+
+    @Param({"ivan.petrov12", "smirnova", "ivan petrov", "iv", "a"})
+    public String query;
+
+    private UserSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        index = new UserSearchIndex(dataSource, new DataSourceTransactionManager(dataSource), 1, 1000);
+        Random random = new Random(42);
+        for (long id = 1; id <= users; id++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            if (name.endsWith("a")) {
+                lastName = lastName + "a";
+            }
+            String username = name.toLowerCase() + "." + lastName.toLowerCase() + id;
+            // Администратор - каждый сотый
+            List<String> roles = random.nextInt(100) == 0 ? List.of("ROLE_ADMIN") : List.of("ROLE_USER");
+            index.put(new UserView(id, username, name, lastName, 18 + random.nextInt(60), 0L, roles));
+        }
+    }
+
+    @Benchmark
+    public List<UserView> search() {
+        return index.search(query, null, null, null, 20);
+    }
+
+    @Benchmark
+    public List<UserView> searchAdmins() {
+        return index.search(query, 30, 40, "admin", 20);
+    }
+}
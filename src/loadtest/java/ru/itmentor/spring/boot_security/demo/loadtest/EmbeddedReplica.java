@@ -0,0 +1,110 @@
+package ru.itmentor.spring.boot_security.demo.loadtest;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Потоковая реплика встроенного PostgreSQL для проверки чтения с реплик (replicas=N в LoadTestRunner).
+// pg_basebackup во встроенных бинарниках нет, поэтому базовая копия снимается вручную:
+// начало базовой копии, копирование каталога данных, её окончание и backup_label из его результата.
+// WAL с начала копии держит физический слот репликации, реплика догоняет primary по нему
+final class EmbeddedReplica {
+
+    // Файлы работающего сервера, которые в копию не попадают
+    private static final Set<String> SKIPPED_FILES = Set.of("postmaster.pid", "postmaster.opts", "epg-lock");
+    // Каталоги, содержимое которых не копируется: WAL придёт потоком, слоты на реплике не нужны
+    private static final Set<String> EMPTIED_DIRS = Set.of("pg_wal", "pg_replslot");
+
+    private EmbeddedReplica() {
+    }
+
+    static EmbeddedPostgres start(EmbeddedPostgres primary, Path primaryDir, Path replicaDir, String slot)
+            throws IOException, SQLException {
+        try (Connection connection = primary.getPostgresDatabase().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("select pg_create_physical_replication_slot('" + slot + "', true)");
+            // До 15 функции назывались pg_start_backup/pg_stop_backup и требовали явный неэксклюзивный режим
+            boolean legacy = connection.getMetaData().getDatabaseMajorVersion() < 15;
+            statement.execute(legacy
+                    ? "select pg_start_backup('" + slot + "', true, false)"
+                    : "select pg_backup_start('" + slot + "', true)");
+            copy(primaryDir, replicaDir);
+            try (ResultSet rs = statement.executeQuery(legacy
+                    ? "select labelfile, spcmapfile from pg_stop_backup(false)"
+                    : "select labelfile, spcmapfile from pg_backup_stop(false)")) {
+                rs.next();
+                Files.writeString(replicaDir.resolve("backup_label"), rs.getString(1));
+                String tablespaceMap = rs.getString(2);
+                if (tablespaceMap != null && !tablespaceMap.isEmpty()) {
+                    Files.writeString(replicaDir.resolve("tablespace_map"), tablespaceMap);
+                }
+            }
+        }
+        // Сервер не стартует с каталогом данных, доступным кому-то кроме владельца
+        Files.setPosixFilePermissions(replicaDir, PosixFilePermissions.fromString("rwx------"));
+        Files.createDirectories(replicaDir.resolve("pg_wal/archive_status"));
+        Files.createFile(replicaDir.resolve("standby.signal"));
+        Files.writeString(replicaDir.resolve("postgresql.auto.conf"),
+                "primary_conninfo = 'host=localhost port=" + primary.getPort() + " user=postgres'\n"
+                        + "primary_slot_name = '" + slot + "'\n",
+                StandardOpenOption.APPEND);
+
+        // Каталог уже инициализирован: initdb не запускается, сервер стартует как standby
+        return EmbeddedPostgres.builder()
+                .setDataDirectory(replicaDir)
+                .setCleanDataDirectory(false)
+                .start();
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path relative = source.relativize(path);
+                if (relative.getNameCount() == 1 && SKIPPED_FILES.contains(relative.toString())) {
+                    continue;
+                }
+                if (relative.getNameCount() > 1 && EMPTIED_DIRS.contains(relative.getName(0).toString())) {
+                    continue;
+                }
+                Path destination = target.resolve(relative.toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    try {
+                        Files.copy(path, destination);
+                    } catch (NoSuchFileException e) {
+                        // Временные файлы сервера могут исчезнуть во время копирования - это нормально для базовой копии
+                    }
+                }
+            }
+        }
+    }
+}
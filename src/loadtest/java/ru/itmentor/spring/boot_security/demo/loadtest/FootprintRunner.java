@@ -0,0 +1,155 @@
+package ru.itmentor.spring.boot_security.demo.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.itmentor.spring.boot_security.demo.SpringBootSecurityDemoApplication;
+import ru.itmentor.spring.boot_security.demo.model.User;
+import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+import ru.itmentor.spring.boot_security.demo.service.UserReadModel;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Память на пользователя: модель чтения (UserReadModel) против сущностей Hibernate, загруженных
+// тем же join fetch, что и findAllWithRoles. Сущности меряются в обычной сессии (со снимками состояния
+// для dirty checking) и в read-only сессии; кэш второго уровня выключен, чтобы считать только граф и контекст.
+// Пользователи вставляются одним SQL с общим хешем пароля - BCrypt на каждого здесь не нужен.
+// Запуск: mvn -Ploadtest -DskipTests test-compile exec:exec
+//   -Dloadtest.main=ru.itmentor.spring.boot_security.demo.loadtest.FootprintRunner -Dloadtest.args="users=50000"
+public class FootprintRunner {
+
+    private static final String SEED_USERS_SQL = "insert into users (username, password, name, lastname, age)"
+            + " select 'fp-user-' || g, ?, 'Name' || g, 'LastName' || g, 18 + g % 60 from generate_series(1, ?) g";
+    // Каждый десятый - ещё и администратор: две комбинации ролей, как в реальных данных
+    private static final String SEED_ROLES_SQL = "insert into user_roles (user_id, role_id)"
+            + " select u.id, r.id from users u join roles r"
+            + " on r.name = 'ROLE_USER' or (r.name = 'ROLE_ADMIN' and u.id % 10 = 0)"
+            + " where u.username like 'fp-user-%'";
+
+    public static void main(String[] args) throws Exception {
+        int users = 20_000;
+        Path report = Path.of("target/loadtest/footprint-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        for (String arg : args) {
+            if (arg.startsWith("users=")) {
+                users = Integer.parseInt(arg.substring("users=".length()).trim());
+            } else if (arg.startsWith("report=")) {
+                report = Path.of(arg.substring("report=".length()).trim());
+            } else if (!arg.isBlank()) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected users= or report=");
+            }
+        }
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(SpringBootSecurityDemoApplication.class)
+                    .profiles("loadtest")
+                    .run("--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                            "--spring.datasource.username=postgres",
+                            "--spring.datasource.password=",
+                            "--app.reactive.url=r2dbc:postgresql://localhost:" + postgres.getPort() + "/postgres");
+            try {
+                JdbcTemplate jdbcTemplate = app.getBean(JdbcTemplate.class);
+                String hash = app.getBean(PasswordEncoder.class).encode(LoadTestOptions.SEED_PASSWORD);
+                jdbcTemplate.update(SEED_USERS_SQL, hash, users);
+                jdbcTemplate.update(SEED_ROLES_SQL);
+                jdbcTemplate.execute("analyze users");
+                long total = jdbcTemplate.queryForObject("select count(*) from users", Long.class);
+                System.out.printf("Seeded %d users, %d in the table%n", users, total);
+
+                Map<String, Double> perUser = new LinkedHashMap<>();
+                perUser.put("readModel", readModel(app) / (double) total);
+                perUser.put("entities", entities(app, false) / (double) total);
+                perUser.put("readOnlyEntities", entities(app, true) / (double) total);
+
+                System.out.printf("%-20s %14s%n", "representation", "bytes/user");
+                perUser.forEach((name, bytes) -> System.out.printf("%-20s %14.1f%n", name, bytes));
+                write(report, total, perUser);
+            } finally {
+                app.close();
+            }
+        }
+    }
+
+    // Отдельный экземпляр модели, загруженный тем же запросом, что и бин приложения
+    private static long readModel(ConfigurableApplicationContext app) {
+        long before = usedHeap();
+        UserReadModel model = new UserReadModel(app.getBean(DataSource.class),
+                app.getBean(PlatformTransactionManager.class), app.getBean(RoleService.class),
+                app.getBean(UserRepository.class), true, 1000, Duration.ZERO);
+        model.load();
+        long used = usedHeap() - before;
+        Reference.reachabilityFence(model);
+        return used;
+    }
+
+    // Сущности держатся вместе с EntityManager: снимки состояния и записи контекста - часть цены этого пути
+    private static long entities(ConfigurableApplicationContext app, boolean readOnly) {
+        EntityManagerFactory factory = app.getBean(EntityManagerFactory.class);
+        long before = usedHeap();
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            Session session = entityManager.unwrap(Session.class);
+            session.setCacheMode(CacheMode.IGNORE);
+            session.setDefaultReadOnly(readOnly);
+            entityManager.getTransaction().begin();
+            List<User> loaded = entityManager
+                    .createQuery("select u from User u left join fetch u.roles order by u.id", User.class)
+                    .getResultList();
+            long used = usedHeap() - before;
+            Reference.reachabilityFence(loaded);
+            entityManager.getTransaction().rollback();
+            return used;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    // Занятая куча после нескольких полных сборок: остаётся только достижимое
+    private static long usedHeap() {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static void write(Path path, long users, Map<String, Double> perUser) throws Exception {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", Instant.now().toString());
+        report.put("users", users);
+        report.put("javaVersion", Runtime.version().toString());
+        report.put("bytesPerUser", perUser);
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), report);
+        System.out.println("Report: " + path.toAbsolutePath());
+    }
+}
@@ -0,0 +1,230 @@
+package ru.itmentor.spring.boot_security.demo.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Замкнутая модель нагрузки: concurrency виртуальных потоков, каждый со своим access-токеном,
+// шлёт следующий запрос сразу после ответа на предыдущий; операция выбирается по весам mix.
+// Задержка - время от отправки до полного ответа; в отчёт идут только запросы после прогрева
+final class LoadDriver {
+
+    enum Operation {
+        REGISTER("POST /api/auth/register"),
+        LOGIN("POST /api/auth/login"),
+        ME("GET /api/auth/me"),
+        LIST("GET /api/users"),
+        UPDATE("PATCH /api/users/{id}");
+
+        final String endpoint;
+
+        Operation(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    // До минуты с точностью в три значащие цифры; более долгие ответы учитываются как минута
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String baseUrl;
+    private final LoadTestOptions options;
+    private final List<SeededUser> users;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final Operation[] wheel;
+    private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+    private final AtomicLong registered = new AtomicLong();
+
+    LoadDriver(String baseUrl, LoadTestOptions options, List<SeededUser> users) {
+        this.baseUrl = baseUrl;
+        this.options = options;
+        this.users = users;
+        // Колесо весов: случайный индекс даёт операцию с нужной частотой без поиска
+        this.wheel = options.mix().entrySet().stream()
+                .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+                .toArray(Operation[]::new);
+        for (Operation operation : options.mix().keySet()) {
+            stats.put(operation, new EndpointStats());
+        }
+    }
+
+    record SeededUser(long id, String username) {
+    }
+
+    record EndpointResult(long requests, long errors, double throughput,
+                          double p50, double p99, double p999, double max, double mean,
+                          Map<Integer, Long> statuses) {
+    }
+
+    Map<Operation, EndpointResult> run() throws InterruptedException {
+        long measureFrom = System.nanoTime() + options.warmup().toNanos();
+        long end = measureFrom + options.duration().toNanos();
+
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.concurrency(); i++) {
+                SeededUser user = users.get(i % users.size());
+                workers.submit(() -> work(user, measureFrom, end));
+            }
+            workers.shutdown();
+            workers.awaitTermination(options.warmup().plus(options.duration()).toSeconds() + 60, TimeUnit.SECONDS);
+        }
+
+        double seconds = options.duration().toNanos() / 1e9;
+        Map<Operation, EndpointResult> results = new LinkedHashMap<>();
+        stats.forEach((operation, endpoint) -> results.put(operation, endpoint.result(seconds)));
+        return results;
+    }
+
+    private void work(SeededUser self, long measureFrom, long end) {
+        String token = null;
+        while (System.nanoTime() < end) {
+            try {
+                if (token == null) {
+                    // Вход самого потока не измеряется: это подготовка, а не операция из mix
+                    token = login(self.username());
+                    if (token == null) {
+                        Thread.sleep(100);
+                    }
+                    continue;
+                }
+                Operation operation = wheel[ThreadLocalRandom.current().nextInt(wheel.length)];
+                HttpRequest request = request(operation, token);
+                long start = System.nanoTime();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+                } catch (IOException e) {
+                    // Нет ответа (сброс соединения, таймаут) - в отчёте статус 0
+                    status = 0;
+                }
+                long elapsed = System.nanoTime() - start;
+                if (start >= measureFrom) {
+                    stats.get(operation).record(elapsed, status);
+                }
+                // Истёк access-токен - входим заново
+                if (status == 401 && operation != Operation.LOGIN) {
+                    token = null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private HttpRequest request(Operation operation, String token) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (operation) {
+            case REGISTER -> json("/api/auth/register", "POST", Map.of(
+                    "username", "lt-new-" + registered.incrementAndGet(),
+                    "password", LoadTestOptions.SEED_PASSWORD,
+                    "name", "Load",
+                    "lastName", "Test",
+                    "age", "30"), null);
+            case LOGIN -> json("/api/auth/login", "POST", Map.of(
+                    "username", users.get(random.nextInt(users.size())).username(),
+                    "password", LoadTestOptions.SEED_PASSWORD), null);
+            case ME -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/auth/me"))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build();
+            case LIST -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/users?limit=" + options.pageSize()
+                            + "&after=" + (users.get(random.nextInt(users.size())).id() - 1)))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build();
+            case UPDATE -> json("/api/users/" + users.get(random.nextInt(users.size())).id(), "PATCH",
+                    Map.of("name", "Load-" + random.nextInt(1_000_000)), token);
+        };
+    }
+
+    // null - вход не удался, поток повторит попытку
+    private String login(String username) throws InterruptedException {
+        try {
+            HttpResponse<String> response = client.send(json("/api/auth/login", "POST", Map.of(
+                    "username", username,
+                    "password", LoadTestOptions.SEED_PASSWORD), null), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return null;
+            }
+            JsonNode body = objectMapper.readTree(response.body());
+            return body.path("accessToken").asText(null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private HttpRequest json(String path, String method, Map<String, String> body, String token) {
+        byte[] bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(bytes));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private static final class EndpointStats {
+
+        private final Histogram latency = new ConcurrentHistogram(MAX_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(long nanos, int status) {
+            latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_MICROS));
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status == 0 || status >= 400) {
+                errors.increment();
+            }
+        }
+
+        EndpointResult result(double seconds) {
+            Map<Integer, Long> byStatus = new TreeMap<>();
+            statuses.forEach((status, count) -> byStatus.put(status, count.sum()));
+            long requests = latency.getTotalCount();
+            return new EndpointResult(requests, errors.sum(), requests / seconds,
+                    millis(latency.getValueAtPercentile(50)),
+                    millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMaxValue()),
+                    requests == 0 ? 0 : Math.round(latency.getMean()) / 1000.0,
+                    byStatus);
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
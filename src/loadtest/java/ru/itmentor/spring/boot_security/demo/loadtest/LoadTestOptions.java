@@ -0,0 +1,102 @@
+package ru.itmentor.spring.boot_security.demo.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Параметры прогона из аргументов вида key=value, например: users=2000 concurrency=128 duration=2m
+// mix задаёт веса операций: register:5,login:10,me:40,list:35,update:10;
+// replicas=N поднимает N потоковых реплик и включает чтение с них (app.datasource.replica.*);
+// virtual-threads=true|false перекрывает spring.threads.virtual.enabled - для сравнения двух режимов
+record LoadTestOptions(int users,
+                       int concurrency,
+                       int seedThreads,
+                       Duration warmup,
+                       Duration duration,
+                       int pageSize,
+                       Map<LoadDriver.Operation, Integer> mix,
+                       int replicas,
+                       Boolean virtualThreads,
+                       Path report) {
+
+    static final String SEED_PASSWORD = "loadtest-password";
+
+    private static final Set<String> KEYS = Set.of(
+            "users", "concurrency", "seed-threads", "warmup", "duration", "page-size", "mix", "replicas", "virtual-threads",
+            "report");
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (arg.isBlank()) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            String key = arg.substring(0, eq).trim();
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown option " + key + ", expected one of " + KEYS);
+            }
+            values.put(key, arg.substring(eq + 1).trim());
+        }
+
+        LoadTestOptions options = new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("users", "500")),
+                Integer.parseInt(values.getOrDefault("concurrency", "32")),
+                Integer.parseInt(values.getOrDefault("seed-threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                DurationStyle.detectAndParse(values.getOrDefault("warmup", "10s")),
+                DurationStyle.detectAndParse(values.getOrDefault("duration", "60s")),
+                Integer.parseInt(values.getOrDefault("page-size", "20")),
+                parseMix(values.getOrDefault("mix", "register:5,login:10,me:40,list:35,update:10")),
+                Integer.parseInt(values.getOrDefault("replicas", "0")),
+                parseFlag("virtual-threads", values.get("virtual-threads")),
+                Path.of(values.getOrDefault("report", "target/loadtest/report-"
+                        + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json")));
+        if (options.users() < 1 || options.concurrency() < 1 || options.seedThreads() < 1) {
+            throw new IllegalArgumentException("users, concurrency and seed-threads must be positive");
+        }
+        if (options.replicas() < 0) {
+            throw new IllegalArgumentException("replicas must not be negative");
+        }
+        return options;
+    }
+
+    // Не задано - null: настройка приложения остаётся как есть
+    private static Boolean parseFlag(String key, String value) {
+        if (value == null) {
+            return null;
+        }
+        if (!"true".equals(value) && !"false".equals(value)) {
+            throw new IllegalArgumentException(key + " must be true or false, got: " + value);
+        }
+        return Boolean.valueOf(value);
+    }
+
+    private static Map<LoadDriver.Operation, Integer> parseMix(String spec) {
+        Map<LoadDriver.Operation, Integer> mix = new EnumMap<>(LoadDriver.Operation.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight in mix, got: " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                mix.put(LoadDriver.Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("mix has no operation with a positive weight");
+        }
+        return mix;
+    }
+}
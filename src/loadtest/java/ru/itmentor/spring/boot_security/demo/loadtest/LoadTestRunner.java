@@ -0,0 +1,199 @@
+package ru.itmentor.spring.boot_security.demo.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.itmentor.spring.boot_security.demo.SpringBootSecurityDemoApplication;
+import ru.itmentor.spring.boot_security.demo.configs.ReplicaRoutingDataSource;
+import ru.itmentor.spring.boot_security.demo.model.Role;
+import ru.itmentor.spring.boot_security.demo.model.User;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+import ru.itmentor.spring.boot_security.demo.service.UserService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Нагрузочный прогон без внешней БД: встроенный PostgreSQL (настоящий, не эмуляция - нативные запросы
+// PATCH и выгрузки работают как в продакшене), приложение с профилем loadtest на случайном порту,
+// N пользователей через UserService и смешанный трафик из LoadDriver. С replicas=N - ещё N потоковых
+// реплик, и read-only транзакции приложения идут на них.
+// Итог - JSON с p50/p99/p99.9 и пропускной способностью по эндпоинтам, для сравнения прогонов.
+// Запуск: mvn -Ploadtest -DskipTests test-compile exec:exec -Dloadtest.args="users=1000 concurrency=64"
+// Платформенные и виртуальные потоки: тот же прогон с virtual-threads=false и virtual-threads=true
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        // devtools перезапустил бы контекст в своём загрузчике классов
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        Path dataRoot = Files.createTempDirectory("loadtest-pg");
+        List<EmbeddedPostgres> replicas = new ArrayList<>();
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder()
+                .setDataDirectory(dataRoot.resolve("primary"))
+                .setCleanDataDirectory(true)
+                .start()) {
+            List<String> appArgs = new ArrayList<>(List.of(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                    "--spring.datasource.username=postgres",
+                    "--spring.datasource.password=",
+                    "--app.reactive.url=r2dbc:postgresql://localhost:" + postgres.getPort() + "/postgres"));
+            if (options.virtualThreads() != null) {
+                appArgs.add("--spring.threads.virtual.enabled=" + options.virtualThreads());
+            }
+            if (options.replicas() > 0) {
+                List<String> urls = new ArrayList<>();
+                for (int i = 1; i <= options.replicas(); i++) {
+                    EmbeddedPostgres replica = EmbeddedReplica.start(postgres, dataRoot.resolve("primary"),
+                            dataRoot.resolve("replica-" + i), "loadtest_replica_" + i);
+                    replicas.add(replica);
+                    urls.add(replica.getJdbcUrl("postgres", "postgres"));
+                }
+                System.out.printf("Started %d streaming replica(s)%n", replicas.size());
+                appArgs.add("--app.datasource.replica.enabled=true");
+                appArgs.add("--app.datasource.replica.urls=" + String.join(",", urls));
+            }
+
+            // Аргументы командной строки перекрывают application.properties, в отличие от properties() билдера
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(SpringBootSecurityDemoApplication.class)
+                    .profiles("loadtest")
+                    .run(appArgs.toArray(String[]::new));
+            try {
+                int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+
+                long seedStart = System.nanoTime();
+                List<LoadDriver.SeededUser> users = seed(app, options);
+                System.out.printf("Seeded %d users in %d ms%n", users.size(),
+                        (System.nanoTime() - seedStart) / 1_000_000);
+
+                System.out.printf("Driving %s with %d clients: %s warm-up, %s measured, mix %s%n",
+                        "http://localhost:" + port, options.concurrency(), options.warmup(), options.duration(),
+                        options.mix());
+                Instant startedAt = Instant.now();
+                Map<LoadDriver.Operation, LoadDriver.EndpointResult> results =
+                        new LoadDriver("http://localhost:" + port, options, users).run();
+
+                print(results);
+                Map<String, Long> reads = reads(app);
+                if (!reads.isEmpty()) {
+                    System.out.println("Read-only connections by datasource: " + reads);
+                }
+                write(options, startedAt, results, reads);
+            } finally {
+                app.close();
+            }
+        } finally {
+            for (EmbeddedPostgres replica : replicas) {
+                replica.close();
+            }
+            EmbeddedReplica.delete(dataRoot);
+        }
+    }
+
+    // Сколько read-only соединений выдал каждый источник (только при replicas > 0)
+    private static Map<String, Long> reads(ConfigurableApplicationContext app) {
+        Map<String, Long> reads = new LinkedHashMap<>();
+        app.getBeanProvider(ReplicaRoutingDataSource.class).ifAvailable(routing -> {
+            reads.put("primary", routing.getPrimaryReads());
+            for (ReplicaRoutingDataSource.Replica replica : routing.getReplicas()) {
+                reads.put(replica.getName(), replica.getReads());
+            }
+        });
+        return reads;
+    }
+
+    // Через UserService, как при регистрации: BCrypt, кэши и поисковый индекс. Параллельно - BCrypt дорогой
+    private static List<LoadDriver.SeededUser> seed(ConfigurableApplicationContext app, LoadTestOptions options)
+            throws Exception {
+        UserService userService = app.getBean(UserService.class);
+        RoleService roleService = app.getBean(RoleService.class);
+        Role userRole = roleService.findByName("ROLE_USER");
+
+        List<Future<LoadDriver.SeededUser>> futures = new ArrayList<>(options.users());
+        ExecutorService executor = Executors.newFixedThreadPool(options.seedThreads());
+        try {
+            for (int i = 0; i < options.users(); i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    User user = new User();
+                    user.setUsername("lt-user-" + index);
+                    user.setPassword(LoadTestOptions.SEED_PASSWORD);
+                    user.setName("Load");
+                    user.setLastName("User" + index);
+                    user.setAge(18 + index % 60);
+                    user.setRoles(Set.of(userRole));
+                    userService.saveUser(user);
+                    return new LoadDriver.SeededUser(user.getId(), user.getUsername());
+                }));
+            }
+            List<LoadDriver.SeededUser> users = new ArrayList<>(futures.size());
+            for (Future<LoadDriver.SeededUser> future : futures) {
+                users.add(future.get());
+            }
+            return users;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void print(Map<LoadDriver.Operation, LoadDriver.EndpointResult> results) {
+        System.out.printf("%-26s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        results.forEach((operation, r) -> System.out.printf("%-26s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                operation.endpoint, r.requests(), r.errors(), r.throughput(), r.p50(), r.p99(), r.p999(), r.max()));
+    }
+
+    private static void write(LoadTestOptions options, Instant startedAt,
+                              Map<LoadDriver.Operation, LoadDriver.EndpointResult> results,
+                              Map<String, Long> reads) throws Exception {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("users", options.users());
+        config.put("concurrency", options.concurrency());
+        config.put("warmupSeconds", options.warmup().toSeconds());
+        config.put("durationSeconds", options.duration().toSeconds());
+        config.put("pageSize", options.pageSize());
+        config.put("mix", options.mix());
+        config.put("replicas", options.replicas());
+        config.put("virtualThreads", options.virtualThreads() != null
+                ? options.virtualThreads() : "application default");
+        config.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        config.put("javaVersion", Runtime.version().toString());
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<LoadDriver.Operation, LoadDriver.EndpointResult> entry : results.entrySet()) {
+            endpoints.put(entry.getKey().endpoint, entry.getValue());
+            requests += entry.getValue().requests();
+            errors += entry.getValue().errors();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("config", config);
+        report.put("requests", requests);
+        report.put("errors", errors);
+        report.put("throughput", requests / (options.duration().toNanos() / 1e9));
+        report.put("latencyUnit", "ms");
+        report.put("endpoints", endpoints);
+        if (!reads.isEmpty()) {
+            report.put("readOnlyConnections", reads);
+        }
+
+        Files.createDirectories(options.report().toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(options.report().toFile(), report);
+        System.out.println("Report: " + options.report().toAbsolutePath());
+    }
+}
@@ -0,0 +1,52 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.stereotype.Component;
+
+// Счётчики успешных и неудачных аутентификаций: security.authentication{method, result, reason}.
+// method=password - логин, httpBasic и форма (события ProviderManager), method=token - Bearer-токен
+@Component
+public class AuthenticationMetrics {
+
+    private static final String NAME = "security.authentication";
+
+    private final MeterRegistry meterRegistry;
+    private final Counter passwordSuccess;
+    private final Counter tokenSuccess;
+    private final Counter tokenFailure;
+
+    public AuthenticationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.passwordSuccess = counter("password", "success", "none");
+        this.tokenSuccess = counter("token", "success", "none");
+        this.tokenFailure = counter("token", "failure", "InvalidToken");
+    }
+
+    @EventListener
+    public void onSuccess(AuthenticationSuccessEvent event) {
+        passwordSuccess.increment();
+    }
+
+    // Причина - имя класса исключения: BadCredentials, LoginThrottled, Locked... Набор конечный
+    @EventListener
+    public void onFailure(AbstractAuthenticationFailureEvent event) {
+        String reason = event.getException().getClass().getSimpleName().replaceFirst("Exception$", "");
+        counter("password", "failure", reason).increment();
+    }
+
+    public void tokenVerified(boolean valid) {
+        (valid ? tokenSuccess : tokenFailure).increment();
+    }
+
+    private Counter counter(String method, String result, String reason) {
+        return Counter.builder(NAME)
+                .tag("method", method)
+                .tag("result", result)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
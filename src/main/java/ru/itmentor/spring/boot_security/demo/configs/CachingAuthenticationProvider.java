@@ -0,0 +1,78 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import ru.itmentor.spring.boot_security.demo.service.CredentialCache;
+import ru.itmentor.spring.boot_security.demo.service.LoginRateLimiter;
+import ru.itmentor.spring.boot_security.demo.service.LoginThrottledException;
+import ru.itmentor.spring.boot_security.demo.service.PasswordUpgradeService;
+
+// Обёртка над DaoAuthenticationProvider: повторные запросы с теми же
+// логином и паролем обслуживаются из CredentialCache без BCrypt и без запроса в БД.
+// Промах кэша (то есть BCrypt) проходит через LoginRateLimiter по логину и IP
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegate;
+    private final CredentialCache credentialCache;
+    private final PasswordUpgradeService passwordUpgradeService;
+    private final LoginRateLimiter loginRateLimiter;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate,
+                                         CredentialCache credentialCache,
+                                         PasswordUpgradeService passwordUpgradeService,
+                                         LoginRateLimiter loginRateLimiter) {
+        this.delegate = delegate;
+        this.credentialCache = credentialCache;
+        this.passwordUpgradeService = passwordUpgradeService;
+        this.loginRateLimiter = loginRateLimiter;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        Object credentials = authentication.getCredentials();
+        if (username == null || !(credentials instanceof String password)) {
+            return delegate.authenticate(authentication);
+        }
+
+        Authentication cached = credentialCache.get(username, password);
+        if (cached != null) {
+            // Новый токен на каждый запрос: закэшированный объект не отдаём наружу
+            UsernamePasswordAuthenticationToken result = new UsernamePasswordAuthenticationToken(
+                    cached.getPrincipal(), null, cached.getAuthorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+
+        // Лимит до загрузки пользователя и BCrypt
+        long retryAfter = loginRateLimiter.acquire(username, remoteAddress(authentication));
+        if (retryAfter > 0) {
+            throw new LoginThrottledException(retryAfter);
+        }
+
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.isAuthenticated()) {
+            credentialCache.put(username, password, result);
+            // Пароль ещё не стёрт ProviderManager'ом - можно перехешировать с текущей стоимостью
+            if (result.getPrincipal() instanceof UserDetails details) {
+                passwordUpgradeService.upgradeIfNeeded(username, details.getPassword(), password);
+            }
+        }
+        return result;
+    }
+
+    private static String remoteAddress(Authentication authentication) {
+        return authentication.getDetails() instanceof WebAuthenticationDetails details
+                ? details.getRemoteAddress()
+                : null;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
@@ -0,0 +1,69 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// BCrypt с фиксированной стоимостью, которая считает устаревшим любой хеш с другой стоимостью
+// (и слишком дешёвый, и слишком дорогой), чтобы после входа его можно было перехешировать
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2([ayb])?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    // Стоимость, на которой делаем замеры: достаточно быстро, но не теряется в шуме
+    private static final int PROBE_STRENGTH = 8;
+    private static final int PROBE_ROUNDS = 5;
+
+    private final int strength;
+
+    public CalibratedBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        if (!matcher.matches()) {
+            return false;
+        }
+        return Integer.parseInt(matcher.group(2)) != strength;
+    }
+
+    // Подбирает наибольшую стоимость в [minStrength, maxStrength], при которой хеш
+    // укладывается в targetLatency. Каждый шаг стоимости удваивает время
+    public static int calibrate(Duration targetLatency, int minStrength, int maxStrength) {
+        String salt = BCrypt.gensalt(PROBE_STRENGTH);
+        BCrypt.hashpw("calibration", salt);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibration", salt);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        long target = targetLatency.toNanos();
+        int chosen = minStrength;
+        for (int cost = minStrength; cost <= maxStrength; cost++) {
+            long estimate = cost >= PROBE_STRENGTH
+                    ? best << (cost - PROBE_STRENGTH)
+                    : best >> (PROBE_STRENGTH - cost);
+            if (cost > minStrength && estimate > target) {
+                break;
+            }
+            chosen = cost;
+        }
+        return chosen;
+    }
+}
@@ -1,5 +1,7 @@
 package ru.itmentor.spring.boot_security.demo.configs;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -8,6 +10,9 @@ import ru.itmentor.spring.boot_security.demo.model.Role;
 import ru.itmentor.spring.boot_security.demo.model.User;
 import ru.itmentor.spring.boot_security.demo.repository.RoleRepository;
 import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+import ru.itmentor.spring.boot_security.demo.service.CredentialCache;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+import ru.itmentor.spring.boot_security.demo.service.UserDetailsServiceImpl;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -15,6 +20,8 @@ import java.util.Set;
 @Component
 public class DataInitializer implements CommandLineRunner {
 
+    private static final Logger log = LoggerFactory.getLogger(DataInitializer.class);
+
     @Autowired
     private UserRepository userRepository;
 
@@ -24,13 +31,20 @@ public class DataInitializer implements CommandLineRunner {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private RoleService roleService;
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
     @Override
     public void run(String... args) {
-        System.out.println("=== Инициализация данных ===");
-
         // Удаляем старого админа если он есть
         userRepository.findByUsername("admin").ifPresent(user -> {
-            System.out.println("Удаляем старого администратора...");
+            log.info("Removing existing administrator");
             userRepository.delete(user);
         });
 
@@ -49,6 +63,9 @@ public class DataInitializer implements CommandLineRunner {
                     return roleRepository.save(role);
                 });
 
+        // Роли могли появиться только что - перечитываем реестр
+        roleService.refresh();
+
         // Создаем НОВОГО администратора с правильным паролем
         User admin = new User();
         admin.setUsername("admin");
@@ -68,15 +85,11 @@ public class DataInitializer implements CommandLineRunner {
 
         userRepository.save(admin);
 
-        System.out.println("Создан НОВЫЙ администратор:");
-        System.out.println("Логин: " + admin.getUsername());
-        System.out.println("Пароль (сырой): " + rawPassword);
-        System.out.println("Пароль (хеш): " + encodedPassword);
-
-        // Проверяем сразу
-        boolean check = passwordEncoder.matches(rawPassword, encodedPassword);
-        System.out.println("Проверка после создания: " + check);
+        // Администратор пересоздан в обход UserService - сбрасываем кэши вручную
+        userDetailsService.evict(admin.getUsername());
+        credentialCache.evict(admin.getUsername());
 
-        System.out.println("=== Инициализация завершена ===");
+        // Ни пароль, ни хеш в лог не пишем
+        log.info("Administrator '{}' recreated", admin.getUsername());
     }
 }
\ No newline at end of file
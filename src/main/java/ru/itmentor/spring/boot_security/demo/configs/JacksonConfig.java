@@ -0,0 +1,16 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    // Без явно заданного фильтра DTO с @JsonFilter сериализуются целиком
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer jsonFilterCustomizer() {
+        return builder -> builder.filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+    }
+}
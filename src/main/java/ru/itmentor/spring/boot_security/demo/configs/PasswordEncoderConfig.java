@@ -0,0 +1,44 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Configuration
+public class PasswordEncoderConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordEncoderConfig.class);
+
+    private static final String BCRYPT_ID = "bcrypt";
+
+    // mode=fixed - стоимость из strength; mode=adaptive - подбирается при старте под target-latency.
+    // Старые хеши (с любой стоимостью и без префикса {bcrypt}) продолжают проверяться
+    @Bean
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                           @Value("${app.security.bcrypt.mode:fixed}") String mode,
+                                           @Value("${app.security.bcrypt.strength:10}") int strength,
+                                           @Value("${app.security.bcrypt.target-latency:250ms}") Duration targetLatency,
+                                           @Value("${app.security.bcrypt.min-strength:10}") int minStrength,
+                                           @Value("${app.security.bcrypt.max-strength:14}") int maxStrength) {
+        int cost = strength;
+        if ("adaptive".equals(mode)) {
+            cost = CalibratedBCryptPasswordEncoder.calibrate(targetLatency, minStrength, maxStrength);
+            log.info("BCrypt strength calibrated to {} for target latency {}", cost, targetLatency);
+        }
+
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(BCRYPT_ID,
+                Map.of(BCRYPT_ID, new CalibratedBCryptPasswordEncoder(cost)));
+        delegating.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+
+        return new TimedPasswordEncoder(delegating, meterRegistry, cost);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.itmentor.spring.boot_security.demo.service.LoginRateLimiter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// Открытые эндпоинты, которые хешируют пароль без аутентификации: регистрация и /api/test.
+// Лимит проверяется до контроллера; вход ограничивается в CachingAuthenticationProvider.
+// Логин регистрации приходит в JSON-теле, которое фильтр не читает: здесь для неё только корзина IP,
+// корзину логина проверяет AuthRestController.registerUser
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final RequestMatcher LIMITED = new OrRequestMatcher(
+            new AntPathRequestMatcher("/api/auth/register"),
+            new AntPathRequestMatcher("/api/test/**"));
+
+    private final LoginRateLimiter loginRateLimiter;
+
+    public RateLimitFilter(LoginRateLimiter loginRateLimiter) {
+        this.loginRateLimiter = loginRateLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !LIMITED.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        // Параметр username есть только у /api/test; для регистрации он null
+        long retryAfter = loginRateLimiter.acquire(request.getParameter("username"), request.getRemoteAddr());
+        if (retryAfter > 0) {
+            writeTooManyRequests(response, retryAfter);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    static void writeTooManyRequests(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"status\":\"error\",\"message\":\"Too many requests\"}");
+    }
+}
@@ -0,0 +1,195 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.http.server.reactive.observation.ServerRequestObservationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsWebFilter;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RequestPredicate;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import ru.itmentor.spring.boot_security.demo.controller.ReactiveRoleHandler;
+import ru.itmentor.spring.boot_security.demo.controller.ReactiveUserHandler;
+import ru.itmentor.spring.boot_security.demo.service.TokenService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.web.reactive.function.server.RequestPredicates.headers;
+
+// Реактивное API только на чтение (/api/v2) на отдельном сервере Reactor Netty.
+// Основное приложение остаётся на Tomcat; здесь запросы обслуживают несколько потоков event loop,
+// общих с драйвером R2DBC, и ни один из них не блокируется на БД или на медленном клиенте.
+// Аутентификация только по access-токену: BCrypt (httpBasic) занял бы event loop.
+// Выключено по умолчанию (app.reactive.enabled): второй порт открывается только там, где он нужен
+@Component
+@ConditionalOnProperty(name = "app.reactive.enabled", havingValue = "true")
+public class ReactiveApiServer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveApiServer.class);
+
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String ROLES_ATTRIBUTE = ReactiveApiServer.class.getName() + ".roles";
+
+    // Поток только по явному Accept: application/x-ndjson; */* получает обычную страницу JSON
+    private static final RequestPredicate NDJSON_REQUESTED = headers(headers -> headers.accept().stream()
+            .anyMatch(APPLICATION_NDJSON::equalsTypeAndSubtype));
+
+    private final RouterFunction<ServerResponse> routes;
+    private final HandlerStrategies strategies;
+    private final ObservationRegistry observationRegistry;
+    private final String host;
+    private final int port;
+
+    private volatile DisposableServer server;
+
+    public ReactiveApiServer(ReactiveUserHandler userHandler,
+                             ReactiveRoleHandler roleHandler,
+                             TokenService tokenService,
+                             AuthenticationMetrics authenticationMetrics,
+                             ObjectMapper objectMapper,
+                             ObservationRegistry observationRegistry,
+                             @Value("${app.reactive.host:0.0.0.0}") String host,
+                             @Value("${app.reactive.port:8081}") int port) {
+        this.host = host;
+        this.port = port;
+        this.observationRegistry = observationRegistry;
+
+        RouterFunction<ServerResponse> users = RouterFunctions.route()
+                .GET("/api/v2/users", NDJSON_REQUESTED, userHandler::streamUsers)
+                .GET("/api/v2/users", userHandler::getUsers)
+                .GET("/api/v2/users/{id}", userHandler::getUserById)
+                .build();
+        RouterFunction<ServerResponse> roles = RouterFunctions.route()
+                .GET("/api/v2/roles", NDJSON_REQUESTED, roleHandler::streamRoles)
+                .GET("/api/v2/roles", roleHandler::getAllRoles)
+                .GET("/api/v2/roles/{id}", roleHandler::getRoleById)
+                .filter(hasRole("ROLE_ADMIN"))
+                .build();
+        this.routes = users.and(roles)
+                .filter(authenticated(tokenService, authenticationMetrics))
+                .filter(observedPattern());
+
+        CorsConfiguration cors = new CorsConfiguration();
+        cors.addAllowedOrigin("*");
+        cors.setAllowedMethods(List.of(HttpMethod.GET.name()));
+        cors.addAllowedHeader("*");
+        cors.setMaxAge(3600L);
+        UrlBasedCorsConfigurationSource corsSource = new UrlBasedCorsConfigurationSource();
+        corsSource.registerCorsConfiguration("/api/v2/**", cors);
+
+        // Тот же ObjectMapper, что и у MVC: фильтр полей UserView и общие настройки сериализации
+        this.strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .webFilter(new CorsWebFilter(corsSource))
+                .build();
+    }
+
+    @Override
+    public void start() {
+        server = HttpServer.create()
+                .host(host)
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler()))
+                .bindNow();
+        log.info("Reactive read API started on port {}", server.port());
+    }
+
+    @Override
+    public void stop() {
+        DisposableServer current = server;
+        if (current != null) {
+            current.disposeNow();
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    // То же, что RouterFunctions.toHttpHandler, плюс наблюдение запросов: таймер http.server.requests,
+    // общий с MVC на Tomcat, так что гистограммы /api/v2 видны рядом с /api
+    HttpHandler httpHandler() {
+        return WebHttpHandlerBuilder.webHandler(RouterFunctions.toWebHandler(routes, strategies))
+                .filters(filters -> filters.addAll(strategies.webFilters()))
+                .exceptionHandlers(handlers -> handlers.addAll(strategies.exceptionHandlers()))
+                .localeContextResolver(strategies.localeContextResolver())
+                .observationRegistry(observationRegistry)
+                .build();
+    }
+
+    // Функциональные маршруты сами не передают шаблон пути в наблюдение - без этого тег uri был бы UNKNOWN
+    private static HandlerFilterFunction<ServerResponse, ServerResponse> observedPattern() {
+        return (request, next) -> {
+            request.attribute(RouterFunctions.MATCHING_PATTERN_ATTRIBUTE).ifPresent(pattern ->
+                    ServerRequestObservationContext.findCurrent(request.exchange().getAttributes())
+                            .ifPresent(context -> context.setPathPattern(((PathPattern) pattern).getPatternString())));
+            return next.handle(request);
+        };
+    }
+
+    // Проверка подписи токена - только HMAC, без обращения к БД, поэтому выполняется прямо на event loop
+    private static HandlerFilterFunction<ServerResponse, ServerResponse> authenticated(
+            TokenService tokenService, AuthenticationMetrics authenticationMetrics) {
+        return (request, next) -> {
+            String header = request.headers().firstHeader(HttpHeaders.AUTHORIZATION);
+            Map<String, Object> claims = null;
+            if (header != null && header.startsWith(BEARER_PREFIX)) {
+                claims = tokenService.verify(header.substring(BEARER_PREFIX.length()).trim(), TokenService.TYPE_ACCESS);
+                authenticationMetrics.tokenVerified(claims != null);
+            }
+            if (claims == null) {
+                return ServerResponse.status(HttpStatus.UNAUTHORIZED)
+                        .header(HttpHeaders.WWW_AUTHENTICATE, "Bearer")
+                        .bodyValue(Map.of(
+                                "status", "error",
+                                "message", "Not authenticated"
+                        ));
+            }
+            request.attributes().put(ROLES_ATTRIBUTE, claims.get("roles"));
+            return next.handle(request);
+        };
+    }
+
+    private static HandlerFilterFunction<ServerResponse, ServerResponse> hasRole(String role) {
+        return (request, next) -> {
+            Object roles = request.attributes().get(ROLES_ATTRIBUTE);
+            if (roles instanceof Collection<?> granted && granted.contains(role)) {
+                return next.handle(request);
+            }
+            return ServerResponse.status(HttpStatus.FORBIDDEN)
+                    .bodyValue(Map.of(
+                            "status", "error",
+                            "message", "Access denied"
+                    ));
+        };
+    }
+}
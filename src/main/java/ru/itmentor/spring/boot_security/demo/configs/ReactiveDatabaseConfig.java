@@ -0,0 +1,58 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.Duration;
+
+// Неблокирующий доступ к той же БД для /api/v2.
+// Пул R2DBC наружу бином не отдаётся: ConnectionFactory в контексте отключил бы автоконфигурацию
+// JDBC DataSource, на котором работают JPA и остальные сервисы
+@Configuration
+@ConditionalOnProperty(name = "app.reactive.enabled", havingValue = "true")
+public class ReactiveDatabaseConfig implements DisposableBean {
+
+    private ConnectionPool connectionPool;
+
+    @Bean
+    public DatabaseClient reactiveDatabaseClient(
+            @Value("${app.reactive.url}") String url,
+            @Value("${app.reactive.username:${spring.datasource.username}}") String username,
+            @Value("${app.reactive.password:${spring.datasource.password}}") String password,
+            @Value("${app.reactive.pool.initial-size:2}") int initialSize,
+            @Value("${app.reactive.pool.max-size:10}") int maxSize,
+            @Value("${app.reactive.pool.max-acquire-time:5s}") Duration maxAcquireTime,
+            MeterRegistry meterRegistry) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .name("reactive-read")
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .maxAcquireTime(maxAcquireTime)
+                .build());
+        // Пул не бин, поэтому метрики r2dbc.pool.* (acquired, pending...) Boot сам не привяжет
+        new ConnectionPoolMetrics(connectionPool, "reactive-read", Tags.empty()).bindTo(meterRegistry);
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionPool != null) {
+            connectionPool.dispose();
+        }
+    }
+}
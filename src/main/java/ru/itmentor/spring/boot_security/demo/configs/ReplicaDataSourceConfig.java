@@ -0,0 +1,169 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import jakarta.persistence.EntityManagerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.itmentor.spring.boot_security.demo.service.UserChangedEvent;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Разделение чтения и записи: транзакции readOnly = true (а также find-методы Spring Data) читают с реплик,
+// остальное идёт на primary. DataSource для JPA и JdbcTemplate - LazyConnectionDataSourceProxy: соединение
+// берётся при первом запросе, когда флаг readOnly транзакции уже выставлен, и из нужного пула.
+// Выключено по умолчанию; без app.datasource.replica.enabled работает автоконфигурация Boot с одним пулом
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig implements DisposableBean {
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private ScheduledExecutorService checker;
+    private ReplicaRoutingDataSource routing;
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${app.datasource.replica.urls}") List<String> urls,
+            @Value("${app.datasource.replica.username:${spring.datasource.username}}") String username,
+            @Value("${app.datasource.replica.password:${spring.datasource.password}}") String password,
+            @Value("${app.datasource.replica.maximum-pool-size:20}") int maximumPoolSize,
+            @Value("${app.datasource.replica.connection-timeout:1s}") Duration connectionTimeout,
+            @Value("${app.datasource.replica.max-lag:5s}") Duration maxLag,
+            @Value("${app.datasource.replica.check-interval:500ms}") Duration checkInterval,
+            @Value("${app.datasource.replica.read-your-writes:1m}") Duration readYourWrites,
+            MeterRegistry meterRegistry,
+            ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        List<String> replicaUrls = urls.stream().map(String::trim).filter(url -> !url.isEmpty()).toList();
+        if (replicaUrls.isEmpty()) {
+            throw new IllegalStateException("app.datasource.replica.enabled=true requires app.datasource.replica.urls");
+        }
+
+        // Свой DataSource отключает автоконфигурацию Boot, поэтому primary собирается из тех же spring.datasource.*
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+        pools.add(primary);
+
+        List<ReplicaRoutingDataSource.Replica> replicas = new ArrayList<>(replicaUrls.size());
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setJdbcUrl(replicaUrls.get(i));
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setReadOnly(true);
+            replica.setMaximumPoolSize(maximumPoolSize);
+            // Недоступная реплика не должна задерживать чтение дольше этого: дальше - primary
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            // Пул не стартует при создании: реплика может быть недоступна при запуске приложения
+            replica.setInitializationFailTimeout(-1);
+            // Пулы реплик не бины: метрики hikaricp.* с тегом pool=replica-N подключаются вручную
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            pools.add(replica);
+            replicas.add(new ReplicaRoutingDataSource.Replica(replica.getPoolName(), replica));
+        }
+
+        // Сессия Hibernate на реплике читает из кэша второго уровня, но не кладёт в него: сущность
+        // с отстающей реплики осталась бы в регионах users/user-roles и после сброса по записи
+        ReplicaRoutingDataSource routing =
+                new ReplicaRoutingDataSource(primary, replicas, maxLag, checkInterval, readYourWrites) {
+                    @Override
+                    protected void onReplicaRead() {
+                        EntityManagerHolder holder = (EntityManagerHolder)
+                                TransactionSynchronizationManager.getResource(entityManagerFactory.getObject());
+                        if (holder != null) {
+                            holder.getEntityManager().unwrap(Session.class).setCacheMode(CacheMode.GET);
+                        }
+                    }
+                };
+        this.routing = routing;
+        for (ReplicaRoutingDataSource.Replica replica : replicas) {
+            Gauge.builder("datasource.replica.lag", replica, ReplicaRoutingDataSource.Replica::getLagMillis)
+                    .tag("replica", replica.getName())
+                    .baseUnit("milliseconds")
+                    .description("Replication lag at the last check, -1 while the replica is unavailable")
+                    .register(meterRegistry);
+            FunctionCounter.builder("datasource.reads", replica, ReplicaRoutingDataSource.Replica::getReads)
+                    .tag("target", replica.getName())
+                    .description("Read-only transactions by the datasource that served them")
+                    .register(meterRegistry);
+        }
+        FunctionCounter.builder("datasource.reads", routing, ReplicaRoutingDataSource::getPrimaryReads)
+                .tag("target", "primary")
+                .description("Read-only transactions by the datasource that served them")
+                .register(meterRegistry);
+
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(routing::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+        return routing;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routing) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing.getPrimary());
+        dataSource.setReadOnlyDataSource(routing);
+        return dataSource;
+    }
+
+    // Boot подключает слушатели к JpaTransactionManager; коммит пишущей транзакции - отметка для read-your-writes
+    @Bean
+    public TransactionExecutionListener replicaWriteListener(ReplicaRoutingDataSource routing) {
+        return new TransactionExecutionListener() {
+            @Override
+            public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+                if (commitFailure == null && !transaction.isReadOnly()) {
+                    routing.recordWrite();
+                }
+            }
+        };
+    }
+
+    // Изменённый пользователь (не только тот, кто менял) читает свои данные с primary, пока реплика не догонит
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (routing != null) {
+            routing.recordWrite(event.user().username());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        pools.forEach(HikariDataSource::close);
+    }
+}
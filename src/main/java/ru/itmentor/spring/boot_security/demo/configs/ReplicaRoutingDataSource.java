@@ -0,0 +1,261 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Источник соединений для read-only транзакций: реплики по кругу, а если подходящей нет - primary.
+// Реплика подходит, если последняя проверка прошла и её отставание не больше maxLag.
+// Отставание считается по WAL: проверка запоминает позицию primary и время, а реплика "догнала" момент t,
+// если уже применила позицию, снятую в t. Этим же временем обеспечивается read-your-writes:
+// клиент, который недавно писал (или чьего пользователя изменили), читает с реплики только после того,
+// как она догнала этот коммит. Другим клиентам реплика может отдать версию старше последнего коммита,
+// поэтому кэши с неё не наполняются: см. onReplicaRead и выборки UserRepository, идущие на primary
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // Клиент без пользователя и запроса: инициализация, фоновые задачи
+    static final String BACKGROUND_CLIENT = "";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final Cache<String, Long> lastWrites;
+    private final Deque<WalSample> samples = new ArrayDeque<>();
+    private final int maxSamples;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas, Duration maxLag,
+                                    Duration checkInterval, Duration readYourWrites) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxLagMillis = maxLag.toMillis();
+        // Отметки времени, по которым ещё можно найти момент не старше maxLag, плюс запас
+        this.maxSamples = (int) (maxLag.toMillis() / Math.max(1, checkInterval.toMillis())) + 2;
+        this.lastWrites = Caffeine.newBuilder()
+                .expireAfterWrite(readYourWrites)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    public static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final LongAdder reads = new LongAdder();
+        private volatile boolean healthy;
+        private volatile boolean checked;
+        // Момент (по часам приложения), все коммиты до которого реплика уже применила; -1 - неизвестно
+        private volatile long appliedUntil = -1;
+        private volatile long lagMillis = -1;
+
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        // Отставание на момент последней проверки; -1 - реплика недоступна или ещё не проверялась
+        public long getLagMillis() {
+            return healthy ? lagMillis : -1;
+        }
+
+        public long getReads() {
+            return reads.sum();
+        }
+    }
+
+    private record WalSample(long time, long position) {
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long lastWrite = lastWriteOf(currentClient());
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+            if (!usable(replica, lastWrite)) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replica.reads.increment();
+                onReplicaRead();
+                return connection;
+            } catch (SQLException e) {
+                // Не ждём следующей проверки: до неё реплика не получает новых чтений
+                markDown(replica, e);
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the configured credentials");
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    // Вызывается после коммита пишущей транзакции в потоке, который её выполнял
+    public void recordWrite() {
+        recordWrite(currentClient());
+    }
+
+    // Запись от имени другого клиента: изменённый пользователь тоже должен видеть своё изменение
+    public void recordWrite(String client) {
+        lastWrites.put(client, System.currentTimeMillis());
+    }
+
+    // Транзакция получила соединение с реплики; вызывается в её потоке до первого запроса
+    protected void onReplicaRead() {
+    }
+
+    // Периодическая проверка: позиция WAL на primary, затем позиция применённого WAL на каждой реплике
+    public synchronized void checkReplicas() {
+        long now = System.currentTimeMillis();
+        long primaryPosition;
+        try {
+            primaryPosition = primaryWalPosition();
+        } catch (SQLException e) {
+            // Без позиции primary отставание не посчитать; реплики остаются в прежнем состоянии
+            log.warn("Cannot read the primary WAL position: {}", e.getMessage());
+            return;
+        }
+        samples.addLast(new WalSample(now, primaryPosition));
+        while (samples.size() > maxSamples) {
+            samples.removeFirst();
+        }
+
+        for (Replica replica : replicas) {
+            try {
+                long replayed = replayedWalPosition(replica.dataSource);
+                long appliedUntil = appliedUntil(replayed);
+                if (appliedUntil > replica.appliedUntil) {
+                    replica.appliedUntil = appliedUntil;
+                }
+                replica.lagMillis = replica.appliedUntil >= 0 ? now - replica.appliedUntil : Long.MAX_VALUE;
+                if (!replica.healthy) {
+                    log.info("Replica {} is available, lag {} ms", replica.name, replica.lagMillis);
+                    replica.healthy = true;
+                }
+                replica.checked = true;
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    // Текущая позиция записи WAL на primary, в байтах от начала
+    protected long primaryWalPosition() throws SQLException {
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "select pg_wal_lsn_diff(pg_current_wal_lsn(), '0/0')::bigint")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // Позиция WAL, которую реплика уже применила; обычный (не standby) сервер репликой не считается
+    protected long replayedWalPosition(DataSource replica) throws SQLException {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "select pg_is_in_recovery(), pg_wal_lsn_diff(pg_last_wal_replay_lsn(), '0/0')::bigint")) {
+            rs.next();
+            if (!rs.getBoolean(1)) {
+                throw new SQLException("server is not a standby (pg_is_in_recovery() is false)");
+            }
+            return rs.getLong(2);
+        }
+    }
+
+    // Строго позже записи: отметка в ту же миллисекунду могла быть снята до коммита
+    private boolean usable(Replica replica, long lastWrite) {
+        return replica.healthy
+                && replica.lagMillis <= maxLagMillis
+                && replica.appliedUntil > lastWrite;
+    }
+
+    // Самая поздняя отметка, позицию которой реплика уже применила
+    private long appliedUntil(long replayed) {
+        long until = -1;
+        for (WalSample sample : samples) {
+            if (sample.position() <= replayed) {
+                until = sample.time();
+            }
+        }
+        return until;
+    }
+
+    // Пишем в лог только смену состояния и неудачную первую проверку, а не каждую попытку
+    private void markDown(Replica replica, SQLException e) {
+        if (replica.healthy || !replica.checked) {
+            log.warn("Replica {} is unavailable, reads go to the primary: {}", replica.name, e.getMessage());
+        }
+        replica.healthy = false;
+        replica.checked = true;
+    }
+
+    private long lastWriteOf(String client) {
+        Long time = lastWrites.getIfPresent(client);
+        return time != null ? time : 0L;
+    }
+
+    // Кто пишет и читает: пользователь, иначе адрес анонимного клиента (регистрация и последующий вход)
+    static String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return authentication.getName();
+        }
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            return "ip:" + attributes.getRequest().getRemoteAddr();
+        }
+        return BACKGROUND_CLIENT;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Число SQL-запросов Hibernate на один HTTP-запрос: hibernate.request.statements{method, uri}.
+// Глобальная статистика Hibernate (hibernate.query.executions и т.п.) не показывает, какой эндпоинт
+// делает N+1. Считаются подготовленные Hibernate операторы в потоке запроса, включая
+// аутентификацию; JdbcTemplate (PATCH, выгрузка) идёт мимо Hibernate и сюда не попадает
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestStatementMetrics extends OncePerRequestFilter
+        implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final String NAME = "hibernate.request.statements";
+
+    private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+
+    public RequestStatementMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] counter = STATEMENTS.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+        return sql;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        int[] counter = new int[1];
+        STATEMENTS.set(counter);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            STATEMENTS.remove();
+            // Шаблон пути, а не сам путь: /api/users/{id}, иначе по тегу на каждого пользователя
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder(NAME)
+                    .baseUnit("statements")
+                    .tag("method", request.getMethod())
+                    .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(counter[0]);
+        }
+    }
+}
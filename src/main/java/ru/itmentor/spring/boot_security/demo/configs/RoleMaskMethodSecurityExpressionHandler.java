@@ -0,0 +1,164 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+import ru.itmentor.spring.boot_security.demo.service.RoleIndex;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+
+import java.util.function.Supplier;
+
+// @PreAuthorize("hasRole('ADMIN')") по маске ролей: стандартный SecurityExpressionRoot на каждую проверку
+// строит HashSet строк из authorities. Роли и authorities, которых нет в RoleIndex, проверяет он же, как раньше
+public class RoleMaskMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    // Через провайдер: обработчик создаётся до репозиториев, RoleService нужен только на первой проверке
+    private final ObjectProvider<RoleService> roleService;
+
+    public RoleMaskMethodSecurityExpressionHandler(ObjectProvider<RoleService> roleService) {
+        this.roleService = roleService;
+    }
+
+    @Override
+    public EvaluationContext createEvaluationContext(Supplier<Authentication> authentication, MethodInvocation mi) {
+        StandardEvaluationContext context =
+                (StandardEvaluationContext) super.createEvaluationContext(authentication, mi);
+        MethodSecurityExpressionOperations root =
+                (MethodSecurityExpressionOperations) context.getRootObject().getValue();
+        context.setRootObject(new RoleMaskExpressionRoot(root, roleService.getObject().index()));
+        return context;
+    }
+
+    public static class RoleMaskExpressionRoot implements MethodSecurityExpressionOperations {
+
+        private final MethodSecurityExpressionOperations delegate;
+        private final RoleIndex index;
+
+        RoleMaskExpressionRoot(MethodSecurityExpressionOperations delegate, RoleIndex index) {
+            this.delegate = delegate;
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasRole(String role) {
+            long bit = index.bit(role);
+            return bit != 0
+                    ? RoleIndex.hasAny(granted(), bit)
+                    : delegate.hasRole(role);
+        }
+
+        @Override
+        public boolean hasAnyRole(String... roles) {
+            long required = 0;
+            for (String role : roles) {
+                long bit = index.bit(role);
+                if (bit == 0) {
+                    return delegate.hasAnyRole(roles);
+                }
+                required |= bit;
+            }
+            return RoleIndex.hasAny(granted(), required);
+        }
+
+        // Authority совпадает с ролью только по полному имени: hasAuthority('ADMIN') - не роль ROLE_ADMIN
+        @Override
+        public boolean hasAuthority(String authority) {
+            return authority.startsWith("ROLE_") ? hasRole(authority) : delegate.hasAuthority(authority);
+        }
+
+        @Override
+        public boolean hasAnyAuthority(String... authorities) {
+            for (String authority : authorities) {
+                if (!authority.startsWith("ROLE_")) {
+                    return delegate.hasAnyAuthority(authorities);
+                }
+            }
+            return hasAnyRole(authorities);
+        }
+
+        private long granted() {
+            Authentication authentication = getAuthentication();
+            return authentication != null ? index.maskOf(authentication.getAuthorities()) : 0L;
+        }
+
+        // principal.* в выражениях, как у SecurityExpressionRoot
+        public Object getPrincipal() {
+            Authentication authentication = getAuthentication();
+            return authentication != null ? authentication.getPrincipal() : null;
+        }
+
+        @Override
+        public Authentication getAuthentication() {
+            return delegate.getAuthentication();
+        }
+
+        @Override
+        public boolean permitAll() {
+            return delegate.permitAll();
+        }
+
+        @Override
+        public boolean denyAll() {
+            return delegate.denyAll();
+        }
+
+        @Override
+        public boolean isAnonymous() {
+            return delegate.isAnonymous();
+        }
+
+        @Override
+        public boolean isAuthenticated() {
+            return delegate.isAuthenticated();
+        }
+
+        @Override
+        public boolean isRememberMe() {
+            return delegate.isRememberMe();
+        }
+
+        @Override
+        public boolean isFullyAuthenticated() {
+            return delegate.isFullyAuthenticated();
+        }
+
+        @Override
+        public boolean hasPermission(Object target, Object permission) {
+            return delegate.hasPermission(target, permission);
+        }
+
+        @Override
+        public boolean hasPermission(Object targetId, String targetType, Object permission) {
+            return delegate.hasPermission(targetId, targetType, permission);
+        }
+
+        @Override
+        public void setFilterObject(Object filterObject) {
+            delegate.setFilterObject(filterObject);
+        }
+
+        @Override
+        public Object getFilterObject() {
+            return delegate.getFilterObject();
+        }
+
+        @Override
+        public void setReturnObject(Object returnObject) {
+            delegate.setReturnObject(returnObject);
+        }
+
+        @Override
+        public Object getReturnObject() {
+            return delegate.getReturnObject();
+        }
+
+        @Override
+        public Object getThis() {
+            return delegate.getThis();
+        }
+    }
+}
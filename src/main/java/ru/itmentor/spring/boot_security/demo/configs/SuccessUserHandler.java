@@ -1,30 +1,38 @@
 package ru.itmentor.spring.boot_security.demo.configs;
 
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.stereotype.Component;
+import ru.itmentor.spring.boot_security.demo.service.RoleIndex;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Set;
 
 @Component
 public class SuccessUserHandler implements AuthenticationSuccessHandler {
 
+    private final RoleService roleService;
+
+    public SuccessUserHandler(RoleService roleService) {
+        this.roleService = roleService;
+    }
+
     @Override
     public void onAuthenticationSuccess(HttpServletRequest request,
                                         HttpServletResponse response,
                                         Authentication authentication) throws IOException {
-        Set<String> roles = AuthorityUtils.authorityListToSet(authentication.getAuthorities());
+        // Маска ролей вместо HashSet из authorities на каждый вход
+        RoleIndex roles = roleService.index();
+        long granted = roles.maskOf(authentication.getAuthorities());
 
-        if (roles.contains("ROLE_ADMIN")) {
+        if (RoleIndex.hasAny(granted, roles.bit("ROLE_ADMIN"))) {
             response.sendRedirect("/admin/");
-        } else if (roles.contains("ROLE_USER")) {
+        } else if (RoleIndex.hasAny(granted, roles.bit("ROLE_USER"))) {
             response.sendRedirect("/user/profile");
         } else {
             response.sendRedirect("/");
         }
     }
-}
\ No newline at end of file
+}
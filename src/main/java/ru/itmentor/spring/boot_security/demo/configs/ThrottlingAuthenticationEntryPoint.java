@@ -0,0 +1,30 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.authentication.www.BasicAuthenticationEntryPoint;
+import ru.itmentor.spring.boot_security.demo.service.LoginThrottledException;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// httpBasic: отклонённая лимитом попытка получает 429 с Retry-After, остальное - обычный 401
+public class ThrottlingAuthenticationEntryPoint implements AuthenticationEntryPoint {
+
+    private final BasicAuthenticationEntryPoint delegate = new BasicAuthenticationEntryPoint();
+
+    public ThrottlingAuthenticationEntryPoint(String realmName) {
+        delegate.setRealmName(realmName);
+    }
+
+    @Override
+    public void commence(HttpServletRequest request, HttpServletResponse response,
+                         AuthenticationException authException) throws IOException {
+        if (authException instanceof LoginThrottledException throttled) {
+            RateLimitFilter.writeTooManyRequests(response, throttled.getRetryAfterSeconds());
+            return;
+        }
+        delegate.commence(request, response, authException);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Замеряет время encode/matches, чтобы видеть цену BCrypt на узле.
+// encode идёт с настроенной стоимостью, matches - со стоимостью проверяемого хеша: старые хеши
+// и хеши, ждущие перехеширования, попадают под свой тег strength
+public class TimedPasswordEncoder implements PasswordEncoder {
+
+    // Стоимость не удалось разобрать: не BCrypt или повреждённый хеш
+    private static final int UNKNOWN_STRENGTH = -1;
+
+    private final PasswordEncoder delegate;
+    private final MeterRegistry meterRegistry;
+    private final Timer encodeTimer;
+    private final Map<Integer, Timer> matchTimers = new ConcurrentHashMap<>();
+    private final Map<Integer, Timer> mismatchTimers = new ConcurrentHashMap<>();
+
+    public TimedPasswordEncoder(PasswordEncoder delegate, MeterRegistry meterRegistry, int strength) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.encodeTimer = timer("security.password.encode", meterRegistry, strength, "none");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.encode(rawPassword);
+        } finally {
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        boolean matches = delegate.matches(rawPassword, encodedPassword);
+        long elapsed = System.nanoTime() - start;
+        int strength = strengthOf(encodedPassword);
+        (matches
+                ? matchTimers.computeIfAbsent(strength, cost -> matchesTimer(cost, "match"))
+                : mismatchTimers.computeIfAbsent(strength, cost -> matchesTimer(cost, "mismatch")))
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        return matches;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    // "{bcrypt}$2a$12$..." или "$2a$12$..." -> 12
+    static int strengthOf(String encodedPassword) {
+        if (encodedPassword == null) {
+            return UNKNOWN_STRENGTH;
+        }
+        int start = encodedPassword.startsWith("{") ? encodedPassword.indexOf('}') + 1 : 0;
+        if (start == 0 && encodedPassword.startsWith("{")
+                || encodedPassword.length() < start + 7
+                || encodedPassword.charAt(start) != '$'
+                || encodedPassword.charAt(start + 3) != '$'
+                || encodedPassword.charAt(start + 6) != '$') {
+            return UNKNOWN_STRENGTH;
+        }
+        char tens = encodedPassword.charAt(start + 4);
+        char ones = encodedPassword.charAt(start + 5);
+        if (!Character.isDigit(tens) || !Character.isDigit(ones)) {
+            return UNKNOWN_STRENGTH;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    private Timer matchesTimer(int strength, String result) {
+        return timer("security.password.matches", meterRegistry, strength, result);
+    }
+
+    private static Timer timer(String name, MeterRegistry meterRegistry, int strength, String result) {
+        return Timer.builder(name)
+                .tag("strength", strength == UNKNOWN_STRENGTH ? "unknown" : String.valueOf(strength))
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.itmentor.spring.boot_security.demo.service.TokenService;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+// Аутентификация по заголовку "Authorization: Bearer <token>".
+// Проверяются только подпись и срок действия, в БД не ходим
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final TokenService tokenService;
+    private final AuthenticationMetrics authenticationMetrics;
+
+    public TokenAuthenticationFilter(TokenService tokenService, AuthenticationMetrics authenticationMetrics) {
+        this.tokenService = tokenService;
+        this.authenticationMetrics = authenticationMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            Map<String, Object> claims = tokenService.verify(
+                    header.substring(BEARER_PREFIX.length()).trim(), TokenService.TYPE_ACCESS);
+            authenticationMetrics.tokenVerified(claims != null);
+            if (claims != null) {
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                        claims.get("sub"), null, tokenService.authorities(claims));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -1,72 +1,137 @@
 package ru.itmentor.spring.boot_security.demo.configs;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.DefaultAuthenticationEventPublisher;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
-import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import ru.itmentor.spring.boot_security.demo.service.CredentialCache;
+import ru.itmentor.spring.boot_security.demo.service.LoginRateLimiter;
+import ru.itmentor.spring.boot_security.demo.service.PasswordUpgradeService;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+import ru.itmentor.spring.boot_security.demo.service.TokenService;
+
+import jakarta.servlet.DispatcherType;
 
 @Configuration
 @EnableWebSecurity
-@EnableGlobalMethodSecurity(prePostEnabled = true)
+@EnableMethodSecurity
 public class WebSecurityConfig {
 
     private final UserDetailsService userDetailsService;
+    private final CredentialCache credentialCache;
+    private final TokenService tokenService;
+    private final LoginRateLimiter loginRateLimiter;
+    private final AuthenticationMetrics authenticationMetrics;
 
     // Конструктор с инъекцией UserDetailsService
-    public WebSecurityConfig(UserDetailsService userDetailsService) {
+    public WebSecurityConfig(UserDetailsService userDetailsService,
+                             CredentialCache credentialCache,
+                             TokenService tokenService,
+                             LoginRateLimiter loginRateLimiter,
+                             AuthenticationMetrics authenticationMetrics) {
         this.userDetailsService = userDetailsService;
+        this.credentialCache = credentialCache;
+        this.tokenService = tokenService;
+        this.loginRateLimiter = loginRateLimiter;
+        this.authenticationMetrics = authenticationMetrics;
+    }
+
+    // REST API: без сессий, аутентификация по подписанному токену или httpBasic
+    @Bean
+    @Order(1)
+    public SecurityFilterChain apiSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher("/api/**")
+                .cors(Customizer.withDefaults())
+                .csrf(csrf -> csrf.disable())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authorizeHttpRequests(authorize -> authorize
+                        // Асинхронная (потоковая выгрузка) и error-диспетчеризация уже прошли проверку на запросе
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                        .requestMatchers("/api/auth/**").permitAll()
+                        .requestMatchers("/api/test/**").permitAll()
+                        .anyRequest().authenticated())
+                .addFilterBefore(new RateLimitFilter(loginRateLimiter),
+                        BasicAuthenticationFilter.class)
+                .addFilterBefore(new TokenAuthenticationFilter(tokenService, authenticationMetrics),
+                        BasicAuthenticationFilter.class)
+                .httpBasic(basic -> basic
+                        .authenticationEntryPoint(new ThrottlingAuthenticationEntryPoint("Realm")));
+
+        return http.build();
     }
 
     @Bean
+    @Order(2)
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
-                .cors().and()
-                .csrf().disable()
-                .authorizeRequests()
-                .antMatchers("/api/auth/**").permitAll()
-                .antMatchers("/api/test/**").permitAll()
-                .antMatchers("/api/**").authenticated()
-                .antMatchers("/admin/**").hasRole("ADMIN")
-                .antMatchers("/user/**").hasAnyRole("USER", "ADMIN")
-                .anyRequest().permitAll()
-                .and()
-                .formLogin()
-                .loginPage("/login")
-                .defaultSuccessUrl("/user")
-                .permitAll()
-                .and()
-                .logout()
-                .permitAll()
-                .and()
-                .httpBasic();
+                .cors(Customizer.withDefaults())
+                .csrf(csrf -> csrf.disable())
+                .authorizeHttpRequests(authorize -> authorize
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+                        .requestMatchers("/admin/**").hasRole("ADMIN")
+                        .requestMatchers("/user/**").hasAnyRole("USER", "ADMIN")
+                        .anyRequest().permitAll())
+                .formLogin(form -> form
+                        .loginPage("/login")
+                        .defaultSuccessUrl("/user")
+                        .permitAll())
+                .logout(logout -> logout.permitAll())
+                .httpBasic(basic -> basic
+                        .authenticationEntryPoint(new ThrottlingAuthenticationEntryPoint("Realm")));
 
         return http.build();
     }
 
+    // static: method security запрашивает обработчик раньше, чем создаётся эта конфигурация
+    @Bean
+    static MethodSecurityExpressionHandler methodSecurityExpressionHandler(ObjectProvider<RoleService> roleService) {
+        return new RoleMaskMethodSecurityExpressionHandler(roleService);
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(
             AuthenticationConfiguration authenticationConfiguration) throws Exception {
         return authenticationConfiguration.getAuthenticationManager();
     }
 
+    // Как у Boot по умолчанию, но исключения без своего события (LoginThrottledException) тоже публикуются -
+    // иначе отказы по лимиту не попадут в счётчик security.authentication
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public AuthenticationEventPublisher authenticationEventPublisher(ApplicationEventPublisher publisher) {
+        DefaultAuthenticationEventPublisher eventPublisher = new DefaultAuthenticationEventPublisher(publisher);
+        eventPublisher.setDefaultAuthenticationFailureEvent(AuthenticationFailureBadCredentialsEvent.class);
+        return eventPublisher;
     }
 
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public AuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder,
+                                                         PasswordUpgradeService passwordUpgradeService) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
-        return authProvider;
+        authProvider.setPasswordEncoder(passwordEncoder);
+        // Проверенные учётные данные кэшируются, BCrypt выполняется только на промахе
+        return new CachingAuthenticationProvider(authProvider, credentialCache, passwordUpgradeService,
+                loginRateLimiter);
     }
 }
\ No newline at end of file
@@ -1,28 +1,66 @@
 package ru.itmentor.spring.boot_security.demo.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
 import ru.itmentor.spring.boot_security.demo.model.User;
 import ru.itmentor.spring.boot_security.demo.service.RoleService;
 import ru.itmentor.spring.boot_security.demo.service.UserService;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 import java.util.List;
+import java.util.Set;
 
 @Controller
 @RequestMapping("/admin")
 public class AdminController {
 
+    private static final Set<String> SORT_COLUMNS = Set.of("id", "username", "name", "lastName", "age");
+
     @Autowired
     private UserService userService;
 
     @Autowired
     private RoleService roleService;
 
+    @Autowired
+    private AdminUserRows adminUserRows;
+
     @GetMapping
-    public String adminPage(Model model) {
-        model.addAttribute("users", userService.getAllUsers());
+    public String adminPage(@RequestParam(defaultValue = "0") int page,
+                            @RequestParam(defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int size,
+                            @RequestParam(defaultValue = "id") String sort,
+                            @RequestParam(defaultValue = "asc") String dir,
+                            @RequestParam(defaultValue = "") String q,
+                            @RequestParam(defaultValue = "") String role,
+                            Model model,
+                            HttpServletRequest request,
+                            HttpServletResponse response) {
+        // Сортировка только по известным колонкам; id вторым ключом - порядок на границах страниц стабилен
+        String column = SORT_COLUMNS.contains(sort) ? sort : "id";
+        Sort.Direction direction = "desc".equalsIgnoreCase(dir) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort order = Sort.by(direction, column);
+        if (!"id".equals(column)) {
+            order = order.and(Sort.by("id"));
+        }
+        int pageSize = Math.max(1, Math.min(size, UserService.MAX_PAGE_SIZE));
+        Page<UserView> users = userService.getUserViewsPage(q, role,
+                PageRequest.of(Math.max(page, 0), pageSize, order));
+
+        model.addAttribute("users", users);
+        model.addAttribute("rows", adminUserRows.rows(users.getContent(), request, response));
+        model.addAttribute("roles", roleService.getAllRoles());
+        model.addAttribute("sort", column);
+        model.addAttribute("dir", direction == Sort.Direction.DESC ? "desc" : "asc");
+        model.addAttribute("q", q);
+        model.addAttribute("role", role);
         return "admin";
     }
 
@@ -37,9 +75,7 @@ public class AdminController {
     public String saveUser(@ModelAttribute User user,
                            @RequestParam("roleIds") List<Long> roleIds) {
         user.getRoles().clear();
-        for (Long roleId : roleIds) {
-            user.getRoles().add(roleService.findById(roleId));
-        }
+        user.getRoles().addAll(roleService.findByIds(roleIds));
         userService.saveUser(user);
         return "redirect:/admin";
     }
@@ -0,0 +1,112 @@
+package ru.itmentor.spring.boot_security.demo.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.web.IWebExchange;
+import org.thymeleaf.web.servlet.JakartaServletWebApplication;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Строки таблицы админки: фрагмент admin_table :: row, отрендеренный один раз на версию пользователя.
+// Любое изменение пользователя (форма, PATCH, роли) увеличивает version, поэтому устаревшая строка
+// просто не совпадёт по версии. В строке нет ничего, что зависит от того, кто смотрит
+@Component
+public class AdminUserRows {
+
+    private static final String TEMPLATE = "admin_table";
+    private static final Set<String> ROW = Set.of("row");
+
+    private final ITemplateEngine templateEngine;
+    private final JakartaServletWebApplication application;
+    private final Cache<Long, Row> cache;
+
+    public AdminUserRows(ITemplateEngine templateEngine,
+                         ServletContext servletContext,
+                         @Value("${app.admin.row-cache.max-size:10000}") long maxSize) {
+        this.templateEngine = templateEngine;
+        this.application = JakartaServletWebApplication.buildApplication(servletContext);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    // HTML строк страницы, лениво: admin.html перебирает их уже во время вывода.
+    // Перед первой строкой ответ сбрасывается в сеть - шапка и фильтры уходят в браузер,
+    // пока рендерятся строки; дальше Tomcat отправляет чанки по заполнению буфера
+    public Iterable<String> rows(List<UserView> users, HttpServletRequest request, HttpServletResponse response) {
+        IWebExchange exchange = application.buildExchange(request, response);
+        return () -> new Iterator<>() {
+            private int next;
+            private boolean flushed;
+
+            @Override
+            public boolean hasNext() {
+                return next < users.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (!flushed) {
+                    flush(response);
+                    flushed = true;
+                }
+                return render(users.get(next++), exchange);
+            }
+        };
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    // Например, после переименования роли: имя роли есть в строке, а версия пользователя не меняется
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    private String render(UserView user, IWebExchange exchange) {
+        Row row = cache.getIfPresent(user.id());
+        if (row != null && row.version() == user.version()) {
+            return row.html();
+        }
+        WebContext context = new WebContext(exchange, exchange.getLocale(), Map.of("user", user));
+        String html = templateEngine.process(TEMPLATE, ROW, context);
+        cache.put(user.id(), new Row(user.version(), html));
+        return html;
+    }
+
+    private static void flush(HttpServletResponse response) {
+        try {
+            response.flushBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Row(long version, String html) {
+    }
+}
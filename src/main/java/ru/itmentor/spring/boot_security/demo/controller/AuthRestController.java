@@ -1,19 +1,30 @@
 package ru.itmentor.spring.boot_security.demo.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
 import org.springframework.web.bind.annotation.*;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
 import ru.itmentor.spring.boot_security.demo.model.Role;
 import ru.itmentor.spring.boot_security.demo.model.User;
+import ru.itmentor.spring.boot_security.demo.service.AccountDetails;
+import ru.itmentor.spring.boot_security.demo.service.LoginRateLimiter;
+import ru.itmentor.spring.boot_security.demo.service.LoginThrottledException;
 import ru.itmentor.spring.boot_security.demo.service.RoleService;
+import ru.itmentor.spring.boot_security.demo.service.TokenService;
+import ru.itmentor.spring.boot_security.demo.service.UserReadModel;
 import ru.itmentor.spring.boot_security.demo.service.UserService;
 
+import jakarta.servlet.http.HttpServletRequest;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,19 +36,28 @@ public class AuthRestController {
 
     private final UserService userService;
     private final RoleService roleService;
-    private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
+    private final TokenService tokenService;
+    private final UserDetailsService userDetailsService;
+    private final UserReadModel userReadModel;
+    private final LoginRateLimiter loginRateLimiter;
 
     // Конструктор с инъекцией зависимостей
     @Autowired
     public AuthRestController(UserService userService,
                               RoleService roleService,
-                              PasswordEncoder passwordEncoder,
-                              AuthenticationManager authenticationManager) {
+                              AuthenticationManager authenticationManager,
+                              TokenService tokenService,
+                              UserDetailsService userDetailsService,
+                              UserReadModel userReadModel,
+                              LoginRateLimiter loginRateLimiter) {
         this.userService = userService;
         this.roleService = roleService;
-        this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
+        this.tokenService = tokenService;
+        this.userDetailsService = userDetailsService;
+        this.userReadModel = userReadModel;
+        this.loginRateLimiter = loginRateLimiter;
     }
 
     // Регистрация нового пользователя
@@ -58,6 +78,18 @@ public class AuthRestController {
                 ));
             }
 
+            // Корзина по логину: RateLimitFilter не видит JSON-тело и ограничивает регистрацию только по IP.
+            // Проверяется до поиска логина в БД: заодно ограничивает перебор занятых логинов
+            long retryAfter = loginRateLimiter.acquireUsername(username);
+            if (retryAfter > 0) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                        .body(Map.of(
+                                "status", "error",
+                                "message", "Too many requests"
+                        ));
+            }
+
             // Проверка существования пользователя
             if (userService.getUserByUsername(username) != null) {
                 return ResponseEntity.badRequest().body(Map.of(
@@ -69,7 +101,8 @@ public class AuthRestController {
             // Создание пользователя
             User user = new User();
             user.setUsername(username);
-            user.setPassword(passwordEncoder.encode(password));
+            // Хеширует saveUser: повторное encode здесь делало пароль непригодным для входа
+            user.setPassword(password);
             user.setName(name != null ? name : "");
             user.setLastName(lastName != null ? lastName : "");
             user.setAge(ageStr != null ? Integer.parseInt(ageStr) : 0);
@@ -99,7 +132,8 @@ public class AuthRestController {
 
     // Логин
     @PostMapping("/login")
-    public ResponseEntity<?> authenticateUser(@RequestBody Map<String, String> loginRequest) {
+    public ResponseEntity<?> authenticateUser(@RequestBody Map<String, String> loginRequest,
+                                              HttpServletRequest request) {
         try {
             String username = loginRequest.get("username");
             String password = loginRequest.get("password");
@@ -111,32 +145,35 @@ public class AuthRestController {
                 ));
             }
 
-            // Аутентификация
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(username, password)
-            );
-
-            SecurityContextHolder.getContext().setAuthentication(authentication);
+            // Аутентификация; IP в details нужен для ограничения частоты попыток
+            UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(username, password);
+            token.setDetails(new WebAuthenticationDetails(request));
+            Authentication authentication = authenticationManager.authenticate(token);
 
-            // Получение информации о пользователе
-            User user = userService.getUserByUsername(username);
+            // Данные пользователя уже есть в principal после аутентификации - в БД не ходим
+            AccountDetails account = authentication.getPrincipal() instanceof AccountDetails details
+                    ? details
+                    : (AccountDetails) userDetailsService.loadUserByUsername(username);
 
             Map<String, Object> response = new HashMap<>();
             response.put("status", "success");
             response.put("message", "User logged in successfully");
-            response.put("user", Map.of(
-                    "id", user.getId(),
-                    "username", user.getUsername(),
-                    "name", user.getName(),
-                    "lastName", user.getLastName(),
-                    "age", user.getAge(),
-                    "roles", user.getRoles().stream()
-                            .map(Role::getName)
-                            .toList()
-            ));
+            // Токены вместо сессии: дальше клиент ходит с "Authorization: Bearer"
+            response.put("tokenType", "Bearer");
+            response.put("accessToken", tokenService.createAccessToken(authentication));
+            response.put("expiresIn", tokenService.getAccessTokenTtlSeconds());
+            response.put("refreshToken", tokenService.createRefreshToken(authentication.getName()));
+            response.put("user", account.toView());
 
             return ResponseEntity.ok(response);
 
+        } catch (LoginThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of(
+                            "status", "error",
+                            "message", "Too many login attempts"
+                    ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of(
@@ -146,6 +183,46 @@ public class AuthRestController {
         }
     }
 
+    // Обновление access-токена по refresh-токену
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refreshToken(@RequestBody Map<String, String> refreshRequest) {
+        String refreshToken = refreshRequest.get("refreshToken");
+        Map<String, Object> claims = refreshToken != null
+                ? tokenService.verify(refreshToken, TokenService.TYPE_REFRESH)
+                : null;
+
+        if (claims == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of(
+                            "status", "error",
+                            "message", "Invalid or expired refresh token"
+                    ));
+        }
+
+        // Роли перечитываем из БД, чтобы изменения попадали в новый токен
+        UserDetails userDetails;
+        try {
+            userDetails = userDetailsService.loadUserByUsername((String) claims.get("sub"));
+        } catch (UsernameNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of(
+                            "status", "error",
+                            "message", "Invalid or expired refresh token"
+                    ));
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "tokenType", "Bearer",
+                "accessToken", tokenService.createAccessToken(
+                        userDetails.getUsername(), userDetails.getAuthorities()),
+                "expiresIn", tokenService.getAccessTokenTtlSeconds(),
+                // Время входа переносится в новый токен: обновлять бесконечно без пароля нельзя
+                "refreshToken", tokenService.createRefreshToken(userDetails.getUsername(),
+                        TokenService.authTime(claims))
+        ));
+    }
+
     // Получение текущего пользователя
     @GetMapping("/me")
     public ResponseEntity<?> getCurrentUser(Authentication authentication) {
@@ -154,22 +231,43 @@ public class AuthRestController {
                     .body(Map.of("status", "error", "message", "Not authenticated"));
         }
 
-        String username = authentication.getName();
-        User user = userService.getUserByUsername(username);
+        // Сессии у /api/** нет: при httpBasic principal - AccountDetails с id, Bearer-токен несёт только логин.
+        // Промах - не отказ: пользователя могли создать на другом узле или мимо UserServiceImpl
+        if (userReadModel.isReady()) {
+            UserView user;
+            if (authentication.getPrincipal() instanceof AccountDetails details) {
+                user = userReadModel.get(details.getId());
+                if (user == null) {
+                    user = userReadModel.fetch(details.getId());
+                }
+            } else {
+                user = userReadModel.getByUsername(authentication.getName());
+                if (user == null) {
+                    user = userReadModel.fetchByUsername(authentication.getName());
+                }
+            }
+            if (user == null) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body(Map.of("status", "error", "message", "Not authenticated"));
+            }
+            return ResponseEntity.ok(Map.of(
+                    "status", "success",
+                    "user", user.withRoles(user.roles().stream().sorted().toList())
+            ));
+        }
 
-        Map<String, Object> userInfo = new HashMap<>();
-        userInfo.put("id", user.getId());
-        userInfo.put("username", user.getUsername());
-        userInfo.put("name", user.getName());
-        userInfo.put("lastName", user.getLastName());
-        userInfo.put("age", user.getAge());
-        userInfo.put("roles", user.getRoles().stream()
-                .map(Role::getName)
-                .toList());
+        // Модель ещё загружается: данные из кэша UserDetailsServiceImpl, без запроса в БД для активных пользователей
+        AccountDetails account;
+        try {
+            account = (AccountDetails) userDetailsService.loadUserByUsername(authentication.getName());
+        } catch (UsernameNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("status", "error", "message", "Not authenticated"));
+        }
 
         return ResponseEntity.ok(Map.of(
                 "status", "success",
-                "user", userInfo
+                "user", account.toView()
         ));
     }
 
@@ -0,0 +1,73 @@
+package ru.itmentor.spring.boot_security.demo.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import ru.itmentor.spring.boot_security.demo.service.CredentialCache;
+import ru.itmentor.spring.boot_security.demo.service.SecondLevelCache;
+import ru.itmentor.spring.boot_security.demo.service.UserDetailsServiceImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/cache")
+@CrossOrigin(origins = "*", maxAge = 3600)
+public class CacheRestController {
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    @Autowired
+    private AdminUserRows adminUserRows;
+
+    // Статистика кэшей: попадания, промахи, вытеснения
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getStats() {
+        Map<String, Object> caches = new LinkedHashMap<>();
+        caches.put("userDetails", toMap(userDetailsService.stats(), userDetailsService.size()));
+        caches.put("credentials", toMap(credentialCache.stats(), credentialCache.size()));
+        caches.put("adminRows", toMap(adminUserRows.stats(), adminUserRows.size()));
+
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "caches", caches,
+                // Регионы второго уровня Hibernate по отдельности - для подбора размеров
+                "hibernate", secondLevelCache.stats()
+        ));
+    }
+
+    // Сбросить кэши вручную (например, после правки БД в обход приложения)
+    @DeleteMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> evictAll() {
+        userDetailsService.evictAll();
+        credentialCache.evictAll();
+        secondLevelCache.evictAll();
+        adminUserRows.evictAll();
+
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "message", "Caches cleared"
+        ));
+    }
+
+    private static Map<String, Object> toMap(CacheStats stats, long size) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", size);
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictions", stats.evictionCount());
+        return map;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.itmentor.spring.boot_security.demo.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import ru.itmentor.spring.boot_security.demo.dto.RoleView;
+import ru.itmentor.spring.boot_security.demo.repository.ReactiveUserRepository;
+
+import java.util.Map;
+
+// Обработчики /api/v2/roles
+@Component
+@ConditionalOnProperty(name = "app.reactive.enabled", havingValue = "true")
+public class ReactiveRoleHandler {
+
+    private final ReactiveUserRepository reactiveUserRepository;
+
+    public ReactiveRoleHandler(ReactiveUserRepository reactiveUserRepository) {
+        this.reactiveUserRepository = reactiveUserRepository;
+    }
+
+    // Получить все роли
+    public Mono<ServerResponse> getAllRoles(ServerRequest request) {
+        return reactiveUserRepository.findAllRoles()
+                .collectList()
+                .flatMap(roles -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(Map.of(
+                        "status", "success",
+                        "roles", roles
+                )))
+                .onErrorResume(e -> ReactiveUserHandler.error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+    }
+
+    // Роли потоком NDJSON
+    public Mono<ServerResponse> streamRoles(ServerRequest request) {
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(reactiveUserRepository.findAllRoles(), RoleView.class);
+    }
+
+    // Получить роль по ID
+    public Mono<ServerResponse> getRoleById(ServerRequest request) {
+        long id;
+        try {
+            id = Long.parseLong(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            return ReactiveUserHandler.error(HttpStatus.BAD_REQUEST, "Invalid id");
+        }
+        return reactiveUserRepository.findRoleById(id)
+                .flatMap(role -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(Map.of(
+                        "status", "success",
+                        "role", role
+                )))
+                .switchIfEmpty(ReactiveUserHandler.error(HttpStatus.NOT_FOUND, "Role not found"));
+    }
+}
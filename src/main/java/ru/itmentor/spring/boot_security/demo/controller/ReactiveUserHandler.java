@@ -0,0 +1,125 @@
+package ru.itmentor.spring.boot_security.demo.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.repository.ReactiveUserRepository;
+import ru.itmentor.spring.boot_security.demo.service.UserService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Обработчики /api/v2/users на реактивном сервере: ни один поток не ждёт БД или клиента
+@Component
+@ConditionalOnProperty(name = "app.reactive.enabled", havingValue = "true")
+public class ReactiveUserHandler {
+
+    // Строк NDJSON в одном фрагменте ответа
+    private static final int STREAM_BATCH_SIZE = 256;
+
+    private final ReactiveUserRepository reactiveUserRepository;
+    private final ObjectWriter userWriter;
+
+    public ReactiveUserHandler(ReactiveUserRepository reactiveUserRepository, ObjectMapper objectMapper) {
+        this.reactiveUserRepository = reactiveUserRepository;
+        this.userWriter = objectMapper.writerFor(UserView.class);
+    }
+
+    // Страница по курсору id
+    public Mono<ServerResponse> getUsers(ServerRequest request) {
+        long after;
+        int limit;
+        try {
+            after = request.queryParam("after").map(Long::parseLong).orElse(0L);
+            limit = request.queryParam("limit").map(Integer::parseInt).orElse(UserService.DEFAULT_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            return error(HttpStatus.BAD_REQUEST, "Invalid after or limit");
+        }
+        int size = Math.max(1, Math.min(limit, UserService.MAX_PAGE_SIZE));
+
+        // Одна лишняя строка показывает, есть ли следующая страница
+        return reactiveUserRepository.findPage(after, size + 1)
+                .collectList()
+                .flatMap(users -> {
+                    boolean hasMore = users.size() > size;
+                    List<UserView> page = hasMore ? users.subList(0, size) : users;
+
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("status", "success");
+                    response.put("users", page);
+                    response.put("hasMore", hasMore);
+                    response.put("nextCursor", hasMore ? page.get(page.size() - 1).id() : null);
+                    return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(response);
+                })
+                .onErrorResume(e -> error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+    }
+
+    // Все пользователи после курсора потоком NDJSON.
+    // Строки читаются из БД по мере того, как клиент принимает уже отправленные.
+    // Кодек NDJSON сбрасывает сокет после каждого объекта, поэтому строки кодируются здесь,
+    // а сброс Reactor Netty делает пачками
+    public Mono<ServerResponse> streamUsers(ServerRequest request) {
+        long after;
+        try {
+            after = request.queryParam("after").map(Long::parseLong).orElse(0L);
+        } catch (NumberFormatException e) {
+            return error(HttpStatus.BAD_REQUEST, "Invalid after");
+        }
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(BodyInserters.fromDataBuffers(reactiveUserRepository.streamAfter(after)
+                        .buffer(STREAM_BATCH_SIZE)
+                        .map(this::toLines)));
+    }
+
+    // Получить пользователя по ID
+    public Mono<ServerResponse> getUserById(ServerRequest request) {
+        long id;
+        try {
+            id = Long.parseLong(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            return error(HttpStatus.BAD_REQUEST, "Invalid id");
+        }
+        return reactiveUserRepository.findById(id)
+                .flatMap(user -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(Map.of(
+                        "status", "success",
+                        "user", user
+                )))
+                .switchIfEmpty(error(HttpStatus.NOT_FOUND, "User not found"))
+                .onErrorResume(e -> error(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+    }
+
+    private DataBuffer toLines(List<UserView> users) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(users.size() * 128);
+        try {
+            for (UserView user : users) {
+                userWriter.writeValue(lines, user);
+                lines.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return DefaultDataBufferFactory.sharedInstance.wrap(lines.toByteArray());
+    }
+
+    static Mono<ServerResponse> error(HttpStatus status, String message) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(Map.of(
+                "status", "error",
+                "message", String.valueOf(message)
+        ));
+    }
+}
@@ -1,14 +1,20 @@
 package ru.itmentor.spring.boot_security.demo.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.itmentor.spring.boot_security.demo.model.Role;
 import ru.itmentor.spring.boot_security.demo.service.RoleService;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -21,26 +27,23 @@ public class RoleRestController {
     @Autowired
     private RoleService roleService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Готовые JSON-ответы для текущего снимка ролей; пересобираются, когда RoleService отдаёт новый снимок
+    private volatile EncodedRoles encoded;
+
     // Получить все роли
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> getAllRoles() {
+    public ResponseEntity<?> getAllRoles(WebRequest request) {
         try {
-            List<Role> roles = roleService.getAllRoles();
-
-            List<Map<String, Object>> roleList = roles.stream()
-                    .map(role -> {
-                        Map<String, Object> roleMap = new HashMap<>();
-                        roleMap.put("id", role.getId());
-                        roleMap.put("name", role.getName());
-                        return roleMap;
-                    })
-                    .collect(Collectors.toList());
+            EncodedRoles current = encodedRoles();
 
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "roles", roleList
-            ));
+            if (request.checkNotModified(current.all.etag)) {
+                return null;
+            }
+            return current.all.toResponse();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of(
@@ -53,18 +56,17 @@ public class RoleRestController {
     // Получить роль по ID
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> getRoleById(@PathVariable Long id) {
+    public ResponseEntity<?> getRoleById(@PathVariable Long id, WebRequest request) {
         try {
-            Role role = roleService.findById(id);
+            EncodedBody body = encodedRoles().byId.get(id);
+            if (body == null) {
+                throw new RuntimeException("Role not found with id: " + id);
+            }
 
-            Map<String, Object> roleMap = new HashMap<>();
-            roleMap.put("id", role.getId());
-            roleMap.put("name", role.getName());
-
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "role", roleMap
-            ));
+            if (request.checkNotModified(body.etag)) {
+                return null;
+            }
+            return body.toResponse();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of(
@@ -73,4 +75,65 @@ public class RoleRestController {
                     ));
         }
     }
-}
\ No newline at end of file
+
+    private EncodedRoles encodedRoles() throws JsonProcessingException {
+        List<Role> roles = roleService.getAllRoles();
+        EncodedRoles current = encoded;
+        if (current == null || current.source != roles) {
+            current = new EncodedRoles(roles, objectMapper);
+            encoded = current;
+        }
+        return current;
+    }
+
+    private static Map<String, Object> toMap(Role role) {
+        Map<String, Object> roleMap = new HashMap<>();
+        roleMap.put("id", role.getId());
+        roleMap.put("name", role.getName());
+        return roleMap;
+    }
+
+    private static final class EncodedRoles {
+        private final List<Role> source;
+        private final EncodedBody all;
+        private final Map<Long, EncodedBody> byId;
+
+        private EncodedRoles(List<Role> roles, ObjectMapper objectMapper) throws JsonProcessingException {
+            this.source = roles;
+
+            List<Map<String, Object>> roleList = roles.stream()
+                    .map(RoleRestController::toMap)
+                    .collect(Collectors.toList());
+            this.all = new EncodedBody(objectMapper.writeValueAsBytes(Map.of(
+                    "status", "success",
+                    "roles", roleList
+            )));
+
+            Map<Long, EncodedBody> ids = new LinkedHashMap<>();
+            for (Role role : roles) {
+                ids.put(role.getId(), new EncodedBody(objectMapper.writeValueAsBytes(Map.of(
+                        "status", "success",
+                        "role", toMap(role)
+                ))));
+            }
+            this.byId = Map.copyOf(ids);
+        }
+    }
+
+    private static final class EncodedBody {
+        private final byte[] bytes;
+        private final String etag;
+
+        private EncodedBody(byte[] bytes) {
+            this.bytes = bytes;
+            this.etag = "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"";
+        }
+
+        private ResponseEntity<byte[]> toResponse() {
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(bytes);
+        }
+    }
+}
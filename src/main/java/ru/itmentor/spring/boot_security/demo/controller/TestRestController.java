@@ -1,11 +1,13 @@
 package ru.itmentor.spring.boot_security.demo.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import ru.itmentor.spring.boot_security.demo.model.User;
 import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+import ru.itmentor.spring.boot_security.demo.service.UserService;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -19,6 +21,9 @@ public class TestRestController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserService userService;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -150,14 +155,21 @@ public class TestRestController {
 
     // Получить информацию о всех пользователях
     @GetMapping("/users-info")
-    public ResponseEntity<?> getAllUsersInfo() {
+    public ResponseEntity<?> getAllUsersInfo(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int limit) {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            var users = userRepository.findAll();
+            Slice<User> page = userService.getUsersPage(after, limit);
+            var users = page.getContent();
 
             response.put("status", "success");
             response.put("count", users.size());
+            response.put("hasMore", page.hasNext());
+            if (page.hasNext()) {
+                response.put("nextCursor", users.get(users.size() - 1).getId());
+            }
             response.put("users", users.stream()
                     .map(user -> {
                         Map<String, Object> userInfo = new HashMap<>();
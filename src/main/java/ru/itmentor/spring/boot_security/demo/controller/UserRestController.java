@@ -1,18 +1,44 @@
 package ru.itmentor.spring.boot_security.demo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import ru.itmentor.spring.boot_security.demo.model.Role;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.itmentor.spring.boot_security.demo.dto.UserPage;
+import ru.itmentor.spring.boot_security.demo.dto.UserPageKeys;
+import ru.itmentor.spring.boot_security.demo.dto.UserPatch;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
 import ru.itmentor.spring.boot_security.demo.model.User;
 import ru.itmentor.spring.boot_security.demo.service.RoleService;
+import ru.itmentor.spring.boot_security.demo.service.UserExportService;
+import ru.itmentor.spring.boot_security.demo.service.UserImportResult;
+import ru.itmentor.spring.boot_security.demo.service.UserImportService;
+import ru.itmentor.spring.boot_security.demo.service.UserReadModel;
+import ru.itmentor.spring.boot_security.demo.service.UserSearchIndex;
 import ru.itmentor.spring.boot_security.demo.service.UserService;
 
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/users")
@@ -25,32 +51,81 @@ public class UserRestController {
     @Autowired
     private RoleService roleService;
 
-    // Получить всех пользователей (ВРЕМЕННО без проверки прав)
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private UserReadModel userReadModel;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserExportService userExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Таймаут асинхронного запроса только для выгрузки: длинная загрузка не обрывается, остальные - по умолчанию
+    @Value("${app.export.timeout:0}")
+    private Duration exportTimeout;
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType APPLICATION_GZIP = MediaType.parseMediaType("application/gzip");
+
+    // Получить пользователей постранично (ВРЕМЕННО без проверки прав).
+    // fields=id,username,... ограничивает набор полей; роли читаются только если запрошены
     @GetMapping
-    public ResponseEntity<?> getAllUsers() {
+    public ResponseEntity<?> getAllUsers(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + UserService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(defaultValue = "false") boolean count,
+            @RequestParam(required = false) Set<String> fields,
+            WebRequest request) {
         try {
-            List<User> users = userService.getAllUsers();
-
-            List<Map<String, Object>> userList = users.stream()
-                    .map(user -> {
-                        Map<String, Object> userMap = new HashMap<>();
-                        userMap.put("id", user.getId());
-                        userMap.put("username", user.getUsername());
-                        userMap.put("name", user.getName());
-                        userMap.put("lastName", user.getLastName());
-                        userMap.put("age", user.getAge());
-                        userMap.put("roles", user.getRoles().stream()
-                                .map(Role::getName)
-                                .collect(Collectors.toList()));
-                        return userMap;
-                    })
-                    .collect(Collectors.toList());
+            Set<String> selected = selectFields(fields);
+            // Модель чтения в памяти; пока она загружается - БД, ETag у обоих путей одинаковый
+            boolean fromModel = userReadModel.isReady();
+            UserPageKeys keys = fromModel
+                    ? userReadModel.getPageKeys(after, limit)
+                    : userService.getUserPageKeys(after, limit);
 
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "count", userList.size(),
-                    "users", userList
-            ));
+            // Общее количество считаем отдельным запросом и только по требованию
+            Long total = !count ? null : fromModel ? (long) userReadModel.size() : userService.countUsers();
+            String etag = total == null ? keys.etag() : keys.etag().replaceFirst("\"$", "-" + total + "\"");
+
+            // Страница не менялась - 304 до чтения пользователей и сериализации
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+
+            List<UserView> users = fromModel
+                    ? userReadModel.getViews(keys.ids(), selected.contains("roles"))
+                    : userService.getUserViews(keys.ids(), selected.contains("roles"));
+
+            // Курсор и ссылка на следующую страницу
+            Long nextCursor = null;
+            String next = null;
+            if (keys.hasMore()) {
+                nextCursor = keys.ids().get(keys.ids().size() - 1);
+                next = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", nextCursor)
+                        .replaceQueryParam("limit", keys.ids().size())
+                        .replaceQueryParam("count")
+                        .toUriString();
+            }
+
+            // Ответ пишет UserPageSerializer, без Map на каждого пользователя
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .body(new UserPage(users, keys.hasMore(), nextCursor, next, total, selected));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                            "status", "error",
+                            "message", e.getMessage()
+                    ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of(
@@ -62,24 +137,48 @@ public class UserRestController {
 
     // Получить пользователя по ID
     @GetMapping("/{id}")
-    public ResponseEntity<?> getUserById(@PathVariable Long id) {
+    public ResponseEntity<?> getUserById(@PathVariable Long id,
+                                         @RequestParam(required = false) Set<String> fields,
+                                         WebRequest request) {
+        Set<String> selected;
         try {
-            User user = userService.getUserById(id);
-
-            Map<String, Object> userMap = new HashMap<>();
-            userMap.put("id", user.getId());
-            userMap.put("username", user.getUsername());
-            userMap.put("name", user.getName());
-            userMap.put("lastName", user.getLastName());
-            userMap.put("age", user.getAge());
-            userMap.put("roles", user.getRoles().stream()
-                    .map(Role::getName)
-                    .collect(Collectors.toList()));
+            selected = selectFields(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                            "status", "error",
+                            "message", e.getMessage()
+                    ));
+        }
 
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "user", userMap
-            ));
+        try {
+            boolean fromModel = userReadModel.isReady();
+            Long version = fromModel ? userReadModel.getVersion(id) : userService.getUserVersion(id);
+            // Промах модели дочитывается из БД: пользователь мог появиться на другом узле
+            if (version == null && fromModel && userReadModel.fetch(id) != null) {
+                version = userReadModel.getVersion(id);
+            }
+            if (version == null) {
+                throw new RuntimeException("User not found");
+            }
+            // Версия не изменилась - 304 без загрузки пользователя
+            if (request.checkNotModified(etag(version))) {
+                return null;
+            }
+
+            UserView user = fromModel
+                    ? userReadModel.get(id, selected.contains("roles"))
+                    : userService.getUserView(id, selected.contains("roles"));
+            if (user == null) {
+                throw new RuntimeException("User not found");
+            }
+
+            return ResponseEntity.ok()
+                    .eTag(etag(user.version()))
+                    .body(withFields(Map.of(
+                            "status", "success",
+                            "user", user
+                    ), selected));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(Map.of(
@@ -89,6 +188,40 @@ public class UserRestController {
         }
     }
 
+    // Поиск по началу логина, имени или фамилии через индекс в памяти, с фильтрами по возрасту и роли
+    @GetMapping("/search")
+    public ResponseEntity<?> searchUsers(@RequestParam String q,
+                                         @RequestParam(required = false) Integer minAge,
+                                         @RequestParam(required = false) Integer maxAge,
+                                         @RequestParam(required = false) String role,
+                                         @RequestParam(defaultValue = "20") int limit,
+                                         @RequestParam(required = false) Set<String> fields) {
+        Set<String> selected;
+        try {
+            selected = selectFields(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
+            ));
+        }
+        if (!userSearchIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of(
+                            "status", "error",
+                            "message", "Search index is being built"
+                    ));
+        }
+
+        List<UserView> users = userSearchIndex.search(q, minAge, maxAge, role, limit);
+
+        return ResponseEntity.ok(withFields(Map.of(
+                "status", "success",
+                "count", users.size(),
+                "users", users
+        ), selected));
+    }
+
     // Создать нового пользователя
     @PostMapping
     public ResponseEntity<?> createUser(@RequestBody Map<String, Object> userData) {
@@ -105,10 +238,7 @@ public class UserRestController {
 
             // Назначение ролей
             if (userData.get("roleIds") != null) {
-                List<Long> roleIds = (List<Long>) userData.get("roleIds");
-                for (Long roleId : roleIds) {
-                    user.getRoles().add(roleService.findById(roleId));
-                }
+                user.getRoles().addAll(roleService.findByIds(toRoleIds(userData.get("roleIds"))));
             }
 
             userService.saveUser(user);
@@ -127,42 +257,115 @@ public class UserRestController {
         }
     }
 
-    // Обновить пользователя
-    @PutMapping("/{id}")
-    public ResponseEntity<?> updateUser(@PathVariable Long id, @RequestBody Map<String, Object> userData) {
+    // Обновить пользователя: PUT и PATCH меняют только переданные поля одним версионным UPDATE.
+    // Ожидаемая версия берётся из "version" в теле или из заголовка If-Match (ETag из GET)
+    @RequestMapping(value = "/{id}", method = {RequestMethod.PUT, RequestMethod.PATCH})
+    public ResponseEntity<?> updateUser(@PathVariable Long id,
+                                        @RequestBody Map<String, Object> userData,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            User user = userService.getUserById(id);
+            Long version = userData.get("version") != null
+                    ? Long.valueOf(userData.get("version").toString())
+                    : parseVersion(ifMatch);
+            UserPatch patch = new UserPatch(
+                    (String) userData.get("username"),
+                    (String) userData.get("password"),
+                    (String) userData.get("name"),
+                    (String) userData.get("lastName"),
+                    userData.get("age") != null ? Integer.valueOf(userData.get("age").toString()) : null,
+                    userData.get("roleIds") != null ? new HashSet<>(toRoleIds(userData.get("roleIds"))) : null,
+                    version);
 
-            if (userData.get("username") != null) {
-                user.setUsername((String) userData.get("username"));
-            }
-            if (userData.get("password") != null && !((String) userData.get("password")).isEmpty()) {
-                user.setPassword((String) userData.get("password"));
-            }
-            if (userData.get("name") != null) {
-                user.setName((String) userData.get("name"));
-            }
-            if (userData.get("lastName") != null) {
-                user.setLastName((String) userData.get("lastName"));
-            }
-            if (userData.get("age") != null) {
-                user.setAge(Integer.parseInt(userData.get("age").toString()));
+            long newVersion = userService.patchUser(id, patch);
+
+            return ResponseEntity.ok()
+                    .eTag(etag(newVersion))
+                    .body(Map.of(
+                            "status", "success",
+                            "message", "User updated successfully",
+                            "version", newVersion
+                    ));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of(
+                            "status", "error",
+                            "message", "User was modified by another request"
+                    ));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of(
+                            "status", "error",
+                            "message", String.valueOf(e.getMessage())
+                    ));
+        }
+    }
+
+    // Потоковая выгрузка всех пользователей в NDJSON или CSV, опционально сжатым файлом .gz
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = UserExportService.FORMAT_NDJSON) String format,
+            @RequestParam(required = false) List<String> fields,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            WebRequest request) {
+        boolean csv = UserExportService.FORMAT_CSV.equals(format);
+        if (!csv && !UserExportService.FORMAT_NDJSON.equals(format)) {
+            return exportError("Unknown format: " + format);
+        }
+        List<String> exportFields = fields == null || fields.isEmpty() ? UserExportService.DEFAULT_FIELDS : fields;
+        for (String field : exportFields) {
+            if (!UserExportService.COLUMNS.containsKey(field)) {
+                return exportError("Unknown field: " + field);
             }
+        }
 
-            // Обновление ролей
-            if (userData.get("roleIds") != null) {
-                user.getRoles().clear();
-                List<Long> roleIds = (List<Long>) userData.get("roleIds");
-                for (Long roleId : roleIds) {
-                    user.getRoles().add(roleService.findById(roleId));
-                }
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+                userExportService.export(format, exportFields, gzipOut);
+                gzipOut.finish();
+            } else {
+                userExportService.export(format, exportFields, out);
             }
+        };
 
-            userService.saveUser(user);
+        // Таймаут применяется при старте асинхронной обработки, уже после возврата из метода
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(exportTimeout.toMillis());
+
+        // Сжатый файл отдаётся как есть, без Content-Encoding: иначе клиент распакует его и сохранит текст в .gz
+        String filename = "users." + (csv ? "csv" : "ndjson") + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(gzip ? APPLICATION_GZIP : csv ? TEXT_CSV : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    // Тип ответа должен оставаться StreamingResponseBody, иначе MVC не найдёт для него обработчик
+    private ResponseEntity<StreamingResponseBody> exportError(String message) {
+        Map<String, Object> error = Map.of(
+                "status", "error",
+                "message", message
+        );
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writeValue(out, error));
+    }
+
+    // Массовый импорт: NDJSON (по объекту на строку) или CSV с заголовком
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                         InputStream body) {
+        try {
+            UserImportResult result = MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV)
+                    ? userImportService.importCsv(body)
+                    : userImportService.importNdjson(body);
 
             return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "message", "User updated successfully"
+                    "status", result.getFailed() == 0 ? "success" : "partial",
+                    "imported", result.getImported(),
+                    "failed", result.getFailed(),
+                    "errors", result.getErrors()
             ));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -191,4 +394,46 @@ public class UserRestController {
                     ));
         }
     }
-}
\ No newline at end of file
+
+    // Jackson отдаёт числа как Integer, приводим к Long
+    private static List<Long> toRoleIds(Object roleIds) {
+        return ((List<?>) roleIds).stream()
+                .map(id -> Long.valueOf(id.toString()))
+                .collect(Collectors.toList());
+    }
+
+    private static Set<String> selectFields(Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return UserView.FIELDS;
+        }
+        for (String field : fields) {
+            if (!UserView.FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+        return fields;
+    }
+
+    private static String etag(Long version) {
+        return "W/\"" + version + "\"";
+    }
+
+    // W/"3" или "3" -> 3; "*" и отсутствие заголовка - без проверки версии
+    private static Long parseVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        return Long.valueOf(value.replace("\"", ""));
+    }
+
+    private static MappingJacksonValue withFields(Object body, Set<String> fields) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(new SimpleFilterProvider()
+                .addFilter(UserView.FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields)));
+        return value;
+    }
+}
@@ -0,0 +1,5 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+// Роль для ответов только на чтение, без связи с пользователями
+public record RoleView(Long id, String name) {
+}
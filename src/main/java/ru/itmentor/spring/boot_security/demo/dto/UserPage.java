@@ -0,0 +1,9 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+import java.util.List;
+import java.util.Set;
+
+// Страница пользователей для GET /api/users; пишется в ответ UserPageSerializer'ом напрямую
+public record UserPage(List<UserView> users, boolean hasMore, Long nextCursor, String next, Long total,
+                       Set<String> fields) {
+}
@@ -0,0 +1,19 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+import java.util.List;
+
+// Первая фаза чтения страницы: id пользователей, признак следующей страницы и слабый ETag по их версиям
+public record UserPageKeys(List<Long> ids, boolean hasMore, String etag) {
+
+    // Слабый ETag по парам (id, version): меняется при любом изменении, добавлении или удалении на странице.
+    // Общий для страниц из БД и из модели чтения - ETag не зависит от того, откуда прочитана страница
+    public static final long ETAG_SEED = 1125899906842597L;
+
+    public static long mix(long hash, long id, long version) {
+        return 31 * (31 * hash + id) + version;
+    }
+
+    public static String etag(long hash, boolean hasMore) {
+        return "W/\"" + Long.toHexString(31 * hash + (hasMore ? 1 : 0)) + "\"";
+    }
+}
@@ -0,0 +1,168 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.springframework.boot.jackson.JsonComponent;
+import ru.itmentor.spring.boot_security.demo.model.Role;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Пишет страницу пользователей прямо в JsonGenerator без промежуточных Map и без рефлексии.
+// Имена полей и имена ролей закодированы заранее, на каждого пользователя почти ничего не аллоцируется
+@JsonComponent
+public class UserPageSerializer extends JsonSerializer<UserPage> {
+
+    private static final SerializedString STATUS = new SerializedString("status");
+    private static final SerializedString SUCCESS = new SerializedString("success");
+    private static final SerializedString COUNT = new SerializedString("count");
+    private static final SerializedString USERS = new SerializedString("users");
+    private static final SerializedString HAS_MORE = new SerializedString("hasMore");
+    private static final SerializedString NEXT_CURSOR = new SerializedString("nextCursor");
+    private static final SerializedString NEXT = new SerializedString("next");
+    private static final SerializedString TOTAL = new SerializedString("total");
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString USERNAME = new SerializedString("username");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString LAST_NAME = new SerializedString("lastName");
+    private static final SerializedString AGE = new SerializedString("age");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString ROLES = new SerializedString("roles");
+
+    private final RoleService roleService;
+
+    // Закодированные имена ролей для текущего снимка RoleService
+    private volatile RoleNames roleNames;
+
+    public UserPageSerializer(RoleService roleService) {
+        this.roleService = roleService;
+    }
+
+    @Override
+    public void serialize(UserPage page, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        List<UserView> users = page.users();
+
+        gen.writeStartObject();
+        gen.writeFieldName(STATUS);
+        gen.writeString(SUCCESS);
+        gen.writeFieldName(COUNT);
+        gen.writeNumber(users.size());
+
+        gen.writeFieldName(USERS);
+        gen.writeStartArray();
+        writeUsers(gen, users, page.fields());
+        gen.writeEndArray();
+
+        gen.writeFieldName(HAS_MORE);
+        gen.writeBoolean(page.hasMore());
+        if (page.nextCursor() != null) {
+            gen.writeFieldName(NEXT_CURSOR);
+            gen.writeNumber(page.nextCursor());
+        }
+        if (page.next() != null) {
+            gen.writeFieldName(NEXT);
+            gen.writeString(page.next());
+        }
+        if (page.total() != null) {
+            gen.writeFieldName(TOTAL);
+            gen.writeNumber(page.total());
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeUsers(JsonGenerator gen, List<UserView> users, Set<String> fields) throws IOException {
+        boolean id = fields.contains("id");
+        boolean username = fields.contains("username");
+        boolean name = fields.contains("name");
+        boolean lastName = fields.contains("lastName");
+        boolean age = fields.contains("age");
+        boolean version = fields.contains("version");
+        boolean roles = fields.contains("roles");
+        Map<String, SerializedString> encodedRoles = roles ? roleNames().encoded : Map.of();
+
+        for (int i = 0, n = users.size(); i < n; i++) {
+            UserView user = users.get(i);
+            gen.writeStartObject();
+            if (id) {
+                gen.writeFieldName(ID);
+                gen.writeNumber(user.id());
+            }
+            if (username) {
+                gen.writeFieldName(USERNAME);
+                gen.writeString(user.username());
+            }
+            if (name) {
+                gen.writeFieldName(NAME);
+                gen.writeString(user.name());
+            }
+            if (lastName) {
+                gen.writeFieldName(LAST_NAME);
+                gen.writeString(user.lastName());
+            }
+            if (age) {
+                gen.writeFieldName(AGE);
+                if (user.age() == null) {
+                    gen.writeNull();
+                } else {
+                    gen.writeNumber(user.age());
+                }
+            }
+            if (version && user.version() != null) {
+                gen.writeFieldName(VERSION);
+                gen.writeNumber(user.version());
+            }
+            if (roles) {
+                gen.writeFieldName(ROLES);
+                gen.writeStartArray();
+                List<String> userRoles = user.roles();
+                for (int r = 0, m = userRoles.size(); r < m; r++) {
+                    String role = userRoles.get(r);
+                    SerializableString encoded = encodedRoles.get(role);
+                    if (encoded != null) {
+                        gen.writeString(encoded);
+                    } else {
+                        gen.writeString(role);
+                    }
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private RoleNames roleNames() {
+        List<Role> roles = roleService.getAllRoles();
+        RoleNames current = roleNames;
+        if (current == null || current.source != roles) {
+            current = new RoleNames(roles);
+            roleNames = current;
+        }
+        return current;
+    }
+
+    private static final class RoleNames {
+        private final List<Role> source;
+        private final Map<String, SerializedString> encoded;
+
+        private RoleNames(List<Role> roles) {
+            this.source = roles;
+            Map<String, SerializedString> names = new HashMap<>();
+            for (Role role : roles) {
+                SerializedString name = new SerializedString(role.getName());
+                // Байты считаются сразу, а не при первой записи
+                name.asQuotedUTF8();
+                name.asQuotedChars();
+                names.put(role.getName(), name);
+            }
+            this.encoded = Map.copyOf(names);
+        }
+    }
+}
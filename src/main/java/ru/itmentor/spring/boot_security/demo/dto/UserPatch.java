@@ -0,0 +1,14 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+import java.util.Set;
+
+// Частичное обновление пользователя: null означает "поле не менять".
+// version - версия, которую видел клиент; null отключает проверку
+public record UserPatch(String username, String password, String name, String lastName, Integer age,
+                        Set<Long> roleIds, Long version) {
+
+    public boolean isEmpty() {
+        return username == null && password == null && name == null && lastName == null && age == null
+                && roleIds == null;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+// Пара id/версия для построения ETag страницы без загрузки самих пользователей
+public interface UserVersion {
+    Long getId();
+    Long getVersion();
+}
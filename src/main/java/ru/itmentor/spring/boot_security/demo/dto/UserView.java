@@ -0,0 +1,26 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+
+import java.util.List;
+import java.util.Set;
+
+// Неизменяемое представление пользователя для чтения: без пароля и без управляемой сущности.
+// Набор полей в ответе ограничивается фильтром FILTER (параметр fields=)
+@JsonFilter(UserView.FILTER)
+public record UserView(Long id, String username, String name, String lastName, Integer age, Long version,
+                       List<String> roles) {
+
+    public static final String FILTER = "userFields";
+
+    public static final Set<String> FIELDS = Set.of("id", "username", "name", "lastName", "age", "version", "roles");
+
+    // Конструктор для JPQL-проекции: роли подгружаются отдельным запросом и только по требованию
+    public UserView(Long id, String username, String name, String lastName, Integer age, Long version) {
+        this(id, username, name, lastName, age, version, List.of());
+    }
+
+    public UserView withRoles(List<String> roles) {
+        return new UserView(id, username, name, lastName, age, version, List.copyOf(roles));
+    }
+}
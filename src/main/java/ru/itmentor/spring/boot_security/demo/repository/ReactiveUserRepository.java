@@ -0,0 +1,87 @@
+package ru.itmentor.spring.boot_security.demo.repository;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.itmentor.spring.boot_security.demo.dto.RoleView;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Чтение пользователей и ролей через R2DBC: те же таблицы users, user_roles и roles, что у JPA-репозиториев.
+// Роли собираются в массив коррелированным подзапросом, поэтому строки идут в порядке индекса по id
+// без сортировки и группировки всей таблицы, и поток можно отдавать клиенту по мере чтения
+@Repository
+@ConditionalOnProperty(name = "app.reactive.enabled", havingValue = "true")
+public class ReactiveUserRepository {
+
+    private static final String USER_COLUMNS = "select u.id, u.username, u.name, u.lastname, u.age, u.version,"
+            + " array(select r.name from user_roles ur join roles r on r.id = ur.role_id"
+            + " where ur.user_id = u.id order by r.name) as roles"
+            + " from users u";
+
+    private final DatabaseClient databaseClient;
+    private final int fetchSize;
+
+    public ReactiveUserRepository(DatabaseClient reactiveDatabaseClient,
+                                  @Value("${app.reactive.fetch-size:500}") int fetchSize) {
+        this.databaseClient = reactiveDatabaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    // Страница по курсору id
+    public Flux<UserView> findPage(long afterId, int limit) {
+        return databaseClient.sql(USER_COLUMNS + " where u.id > :after order by u.id limit :limit")
+                .bind("after", afterId)
+                .bind("limit", limit)
+                .map(ReactiveUserRepository::toView)
+                .all();
+    }
+
+    // Все пользователи после курсора. Строки читаются порталом по fetchSize и только по запросу подписчика,
+    // так что медленный клиент притормаживает чтение из БД, а не копит строки в памяти
+    public Flux<UserView> streamAfter(long afterId) {
+        return databaseClient.sql(USER_COLUMNS + " where u.id > :after order by u.id")
+                .bind("after", afterId)
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(ReactiveUserRepository::toView)
+                .all();
+    }
+
+    public Mono<UserView> findById(long id) {
+        return databaseClient.sql(USER_COLUMNS + " where u.id = :id")
+                .bind("id", id)
+                .map(ReactiveUserRepository::toView)
+                .one();
+    }
+
+    public Flux<RoleView> findAllRoles() {
+        return databaseClient.sql("select id, name from roles order by id")
+                .map(row -> new RoleView(row.get("id", Long.class), row.get("name", String.class)))
+                .all();
+    }
+
+    public Mono<RoleView> findRoleById(long id) {
+        return databaseClient.sql("select id, name from roles where id = :id")
+                .bind("id", id)
+                .map(row -> new RoleView(row.get("id", Long.class), row.get("name", String.class)))
+                .one();
+    }
+
+    private static UserView toView(Readable row) {
+        String[] roles = row.get("roles", String[].class);
+        return new UserView(
+                row.get("id", Long.class),
+                row.get("username", String.class),
+                row.get("name", String.class),
+                row.get("lastname", String.class),
+                row.get("age", Integer.class),
+                row.get("version", Long.class),
+                roles != null ? Arrays.asList(roles) : List.of());
+    }
+}
@@ -1,12 +1,18 @@
 package ru.itmentor.spring.boot_security.demo.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import ru.itmentor.spring.boot_security.demo.model.Role;
 
+import jakarta.persistence.QueryHint;
 import java.util.Optional;
 
 @Repository
 public interface RoleRepository extends JpaRepository<Role, Long> {
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = "role-queries")
+    })
     Optional<Role> findByName(String name);
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package ru.itmentor.spring.boot_security.demo.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Точечные обновления пользователя на SQL, без загрузки и merge сущности
+@Repository
+public class UserPatchRepository {
+
+    // Старое и новое имя нужны для сброса кэшей, новая версия - для ответа,
+    // строка целиком (после записи, с ролями) - для модели чтения
+    public record Updated(String oldUsername, UserView user) {
+
+        public String newUsername() {
+            return user.username();
+        }
+
+        public long version() {
+            return user.version();
+        }
+
+        public Updated withRoles(List<String> roles) {
+            return new Updated(oldUsername, user.withRoles(roles));
+        }
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public UserPatchRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Один UPDATE только по переданным колонкам с увеличением версии.
+    // Пустой результат - пользователя нет или версия не совпала
+    public Updated update(long id, Map<String, Object> columns, Long expectedVersion) {
+        StringBuilder sql = new StringBuilder("update users u set ");
+        MapSqlParameterSource params = new MapSqlParameterSource("id", id);
+        columns.forEach((column, value) -> {
+            sql.append(column).append(" = :").append(column).append(", ");
+            params.addValue(column, value);
+        });
+        sql.append("version = u.version + 1")
+                .append(" from (select username from users where id = :id) old")
+                .append(" where u.id = :id");
+        if (expectedVersion != null) {
+            sql.append(" and u.version = :version");
+            params.addValue("version", expectedVersion);
+        }
+        sql.append(" returning old.username, u.id, u.username, u.name, u.lastname, u.age, u.version");
+
+        // Роли - отдельным запросом findRoleNames: подзапрос в returning видел бы снимок до ожидания блокировки строки
+        List<Updated> rows = jdbcTemplate.query(sql.toString(), params, (rs, rowNum) ->
+                new Updated(rs.getString(1), new UserView(rs.getLong(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getObject(6, Integer.class), rs.getLong(7), List.of())));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    public List<String> findRoleNames(long id) {
+        return jdbcTemplate.queryForList("select r.name from user_roles ur join roles r on r.id = ur.role_id"
+                + " where ur.user_id = :id order by r.id", new MapSqlParameterSource("id", id), String.class);
+    }
+
+    // Разница множеств вместо очистки и повторной вставки: удаляются лишние связи,
+    // добавляются недостающие, неизменные строки user_roles не трогаются
+    public void replaceRoles(long id, Collection<Long> roleIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource("id", id);
+        if (roleIds.isEmpty()) {
+            jdbcTemplate.update("delete from user_roles where user_id = :id", params);
+            return;
+        }
+        params.addValue("roleIds", roleIds);
+        jdbcTemplate.update("delete from user_roles where user_id = :id and role_id not in (:roleIds)", params);
+        jdbcTemplate.update("insert into user_roles (user_id, role_id)"
+                + " select :id, r.id from roles r where r.id in (:roleIds)"
+                + " and not exists (select 1 from user_roles ur where ur.user_id = :id and ur.role_id = r.id)", params);
+    }
+}
@@ -1,13 +1,91 @@
 package ru.itmentor.spring.boot_security.demo.repository;
 
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.itmentor.spring.boot_security.demo.dto.UserVersion;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
 import ru.itmentor.spring.boot_security.demo.model.User;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
+    // Роли ленивые: все выборки, которым они нужны, забирают их тем же запросом
+    // Результат кэшируется в регионе запросов, сами пользователи и роли - в своих регионах второго уровня.
+    // Эти выборки наполняют кэши (L2, UserDetails) и потому читают с primary, а не с реплики:
+    // отстающая реплика сразу после сброса кэша вернула бы в него старый хеш и роли
+    @Transactional
+    @EntityGraph(attributePaths = "roles")
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = "user-queries")
+    })
     Optional<User> findByUsername(String username);
+
+    @Transactional
+    @EntityGraph(attributePaths = "roles")
+    Optional<User> findWithRolesById(Long id);
+
+    // Hibernate 6 сам убирает дубликаты строк join fetch, distinct в SQL не нужен
+    @Query("select u from User u left join fetch u.roles order by u.id")
+    List<User> findAllWithRoles();
+
+    // Keyset-пагинация в две фазы: сначала id страницы, затем пользователи с ролями по этим id.
+    // Так LIMIT применяется к пользователям, а не к строкам join'а
+    @Query("select u.id from User u where u.id > :after order by u.id")
+    Slice<Long> findIdsAfter(@Param("after") Long after, Pageable pageable);
+
+    @Query("select u from User u left join fetch u.roles where u.id in :ids order by u.id")
+    List<User> findAllWithRolesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Страница админки: фильтр по началу логина, имени или фамилии и по роли, порядок - из Pageable.
+    // Тоже только id: пользователи и роли страницы читаются следующими запросами
+    String ADMIN_FILTER = " where (lower(u.username) like :prefix escape '\\'"
+            + " or lower(u.name) like :prefix escape '\\' or lower(u.lastName) like :prefix escape '\\')"
+            + " and (:role = '' or exists (select 1 from u.roles r where r.name = :role))";
+
+    @Query(value = "select u.id from User u" + ADMIN_FILTER,
+            countQuery = "select count(u) from User u" + ADMIN_FILTER)
+    Page<Long> findIdsByFilter(@Param("prefix") String prefix, @Param("role") String role, Pageable pageable);
+
+    // Проекции для чтения: только нужные колонки, без пароля и без управляемых сущностей
+    @Query("select u.id as id, u.version as version from User u where u.id > :after order by u.id")
+    Slice<UserVersion> findVersionsAfter(@Param("after") Long after, Pageable pageable);
+
+    @Query("select u.version from User u where u.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select new ru.itmentor.spring.boot_security.demo.dto.UserView("
+            + "u.id, u.username, u.name, u.lastName, u.age, u.version)"
+            + " from User u where u.id in :ids order by u.id")
+    List<UserView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new ru.itmentor.spring.boot_security.demo.dto.UserView("
+            + "u.id, u.username, u.name, u.lastName, u.age, u.version)"
+            + " from User u where u.id = :id")
+    Optional<UserView> findViewById(@Param("id") Long id);
+
+    // Пары (id пользователя, имя роли) для набора пользователей одним запросом
+    @Query("select u.id, r.name from User u join u.roles r where u.id in :ids")
+    List<Object[]> findRoleNamesByUserIds(@Param("ids") Collection<Long> ids);
+
+    // Замена хеша пароля, только если он не изменился с момента чтения
+    @Modifying
+    @Query("update User u set u.password = :newHash where u.username = :username and u.password = :oldHash")
+    int updatePasswordIfUnchanged(@Param("username") String username,
+                                  @Param("oldHash") String oldHash,
+                                  @Param("newHash") String newHash);
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+import java.util.Collection;
+import java.util.List;
+
+// UserDetails с полями профиля, чтобы /api/auth/me отвечал из кэша без запроса в БД
+public class AccountDetails extends User {
+
+    private final Long id;
+    private final String name;
+    private final String lastName;
+    private final Integer age;
+    private final Long version;
+    // Роли битами RoleIndex и общий для этой комбинации ролей список authorities
+    private final long roleMask;
+    private final List<GrantedAuthority> authorities;
+
+    public AccountDetails(Long id, String username, String password, String name, String lastName, Integer age,
+                          Long version, long roleMask, List<GrantedAuthority> authorities) {
+        // Родителю - пустой список: его отсортированная копия authorities на каждый экземпляр не нужна
+        super(username, password, List.of());
+        this.id = id;
+        this.name = name;
+        this.lastName = lastName;
+        this.age = age;
+        this.version = version;
+        this.roleMask = roleMask;
+        this.authorities = authorities;
+    }
+
+    // Копия для выдачи наружу: ProviderManager стирает пароль у возвращённого объекта
+    public AccountDetails(AccountDetails other) {
+        super(other.getUsername(), other.getPassword(), List.of());
+        this.id = other.id;
+        this.name = other.name;
+        this.lastName = other.lastName;
+        this.age = other.age;
+        this.version = other.version;
+        this.roleMask = other.roleMask;
+        this.authorities = other.authorities;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    public long getRoleMask() {
+        return roleMask;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public UserView toView() {
+        return new UserView(id, getUsername(), name, lastName, age, version,
+                AuthorityUtils.authorityListToSet(getAuthorities()).stream().sorted().toList());
+    }
+}
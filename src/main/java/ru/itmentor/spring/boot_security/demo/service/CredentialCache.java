@@ -0,0 +1,117 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+// Кэш недавно проверенных логинов/паролей, чтобы не гонять BCrypt на каждый запрос.
+// Пароль в открытом виде не хранится: только HMAC-SHA256(username + password)
+// на случайном ключе, который живёт в памяти процесса.
+@Component
+public class CredentialCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, Entry> cache;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    public CredentialCache(@Value("${app.security.credential-cache.max-size:10000}") long maxSize,
+                           @Value("${app.security.credential-cache.ttl:5m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    // Возвращает ранее успешную аутентификацию, если пароль совпадает с закэшированным
+    public Authentication get(String username, String password) {
+        Entry entry = cache.getIfPresent(username);
+        if (entry == null) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(entry.digest, digest(username, password))) {
+            return null;
+        }
+        return entry.authentication;
+    }
+
+    public void put(String username, String password, Authentication authentication) {
+        cache.put(username, new Entry(digest(username, password), authentication));
+    }
+
+    // Сбрасываем сразу и ещё раз после коммита, чтобы параллельный логин
+    // не успел положить в кэш данные из незакоммиченного состояния
+    public void evict(String username) {
+        if (username == null) {
+            return;
+        }
+        cache.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(username);
+                }
+            });
+        }
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private byte[] digest(String username, String password) {
+        Mac hmac = mac.get();
+        hmac.update(username.getBytes(StandardCharsets.UTF_8));
+        hmac.update((byte) 0);
+        return hmac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac hmac = Mac.getInstance(HMAC_ALGORITHM);
+            hmac.init(key);
+            return hmac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC is not available", e);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] digest;
+        private final Authentication authentication;
+
+        private Entry(byte[] digest, Authentication authentication) {
+            this.digest = digest;
+            this.authentication = authentication;
+        }
+    }
+}
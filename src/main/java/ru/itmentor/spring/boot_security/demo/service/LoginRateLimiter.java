@@ -0,0 +1,51 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Ограничение частоты операций с BCrypt: вход (кроме попаданий в CredentialCache), регистрация
+// и /api/test. Проверяется до хеширования, по логину и по IP клиента одновременно
+@Component
+public class LoginRateLimiter {
+
+    private final boolean enabled;
+    private final TokenBucketLimiter byUsername;
+    private final TokenBucketLimiter byIp;
+
+    public LoginRateLimiter(MeterRegistry meterRegistry,
+                            @Value("${app.security.rate-limit.enabled:true}") boolean enabled,
+                            @Value("${app.security.rate-limit.username.capacity:10}") int usernameCapacity,
+                            @Value("${app.security.rate-limit.username.refill-period:6s}") Duration usernameRefill,
+                            @Value("${app.security.rate-limit.ip.capacity:30}") int ipCapacity,
+                            @Value("${app.security.rate-limit.ip.refill-period:1s}") Duration ipRefill,
+                            @Value("${app.security.rate-limit.max-keys:100000}") long maxKeys,
+                            @Value("${app.security.rate-limit.idle-timeout:10m}") Duration idleTimeout) {
+        this.enabled = enabled;
+        this.byUsername = new TokenBucketLimiter("username", usernameCapacity, usernameRefill, maxKeys,
+                idleTimeout, meterRegistry);
+        this.byIp = new TokenBucketLimiter("ip", ipCapacity, ipRefill, maxKeys, idleTimeout, meterRegistry);
+    }
+
+    // 0 - можно продолжать; иначе через сколько секунд повторить
+    public long acquire(String username, String ip) {
+        if (!enabled) {
+            return 0;
+        }
+        // Сначала IP: перебор логинов с одного адреса не раздувает корзины по логинам
+        long wait = ip != null ? byIp.tryAcquire(ip) : 0;
+        if (wait == 0 && username != null) {
+            wait = byUsername.tryAcquire(username.toLowerCase(Locale.ROOT));
+        }
+        return wait == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1);
+    }
+
+    // Только корзина логина - когда IP уже проверен фильтром, а логин известен лишь из тела запроса
+    public long acquireUsername(String username) {
+        return acquire(username, null);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.springframework.security.core.AuthenticationException;
+
+// Попытка входа отклонена LoginRateLimiter до проверки пароля
+public class LoginThrottledException extends AuthenticationException {
+
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(long retryAfterSeconds) {
+        super("Too many login attempts, retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
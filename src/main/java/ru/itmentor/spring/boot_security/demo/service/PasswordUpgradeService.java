@@ -0,0 +1,85 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Фоновое перехеширование пароля после успешного входа, если стоимость хеша
+// не совпадает с текущей настройкой. Логин не ждёт лишнего BCrypt
+@Service
+public class PasswordUpgradeService {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordUpgradeService.class);
+
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final TransactionTemplate transactionTemplate;
+
+    // Один поток и короткая очередь: при всплеске логинов лишние апгрейды просто отложатся до следующего входа
+    private final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000),
+            runnable -> {
+                Thread thread = new Thread(runnable, "password-upgrade");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public PasswordUpgradeService(UserRepository userRepository,
+                                  PasswordEncoder passwordEncoder,
+                                  UserDetailsServiceImpl userDetailsService,
+                                  TransactionTemplate transactionTemplate) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.userDetailsService = userDetailsService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public void upgradeIfNeeded(String username, String storedHash, String rawPassword) {
+        if (storedHash == null || !passwordEncoder.upgradeEncoding(storedHash) || !pending.add(username)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    upgrade(username, storedHash, rawPassword);
+                } catch (RuntimeException e) {
+                    log.warn("Password upgrade failed for {}", username, e);
+                } finally {
+                    pending.remove(username);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(username);
+        }
+    }
+
+    private void upgrade(String username, String storedHash, String rawPassword) {
+        String newHash = passwordEncoder.encode(rawPassword);
+        // Обновляем только если пароль не сменили, пока мы считали новый хеш
+        Integer updated = transactionTemplate.execute(status ->
+                userRepository.updatePasswordIfUnchanged(username, storedHash, newHash));
+        if (updated != null && updated > 0) {
+            userDetailsService.evict(username);
+        }
+    }
+}
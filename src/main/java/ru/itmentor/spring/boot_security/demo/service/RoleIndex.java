@@ -0,0 +1,213 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import ru.itmentor.spring.boot_security.demo.model.Role;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Плотные номера ролей (бит 0..63 в порядке id) и общие для всех пользователей наборы GrantedAuthority.
+// Набор ролей пользователя - одно long; проверка роли - AND двух масок без строк и без аллокаций.
+// Снимок неизменяемый: RoleService.index() отдаёт новый после каждого refresh()
+public final class RoleIndex {
+
+    public static final int MAX_ROLES = Long.SIZE;
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    // Комбинации до 8 ролей (256 списков) строятся сразу, больше - лениво при первом обращении
+    private static final int PREBUILT_ROLES = 8;
+
+    private final RoleAuthority[] authorities;
+    private final long known;
+    private final Map<String, RoleAuthority> byName;
+    private final List<GrantedAuthority>[] prebuilt;
+    private final Map<Long, List<GrantedAuthority>> combinations = new ConcurrentHashMap<>();
+    private final List<String>[] prebuiltNames;
+    private final Map<Long, List<String>> nameCombinations = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private RoleIndex(List<String> names) {
+        if (names.size() > MAX_ROLES) {
+            throw new IllegalStateException("At most " + MAX_ROLES + " roles fit into a role mask, got "
+                    + names.size());
+        }
+        this.authorities = new RoleAuthority[names.size()];
+        Map<String, RoleAuthority> lookup = new HashMap<>();
+        for (int bit = 0; bit < names.size(); bit++) {
+            RoleAuthority authority = new RoleAuthority(names.get(bit), bit);
+            authorities[bit] = authority;
+            lookup.put(authority.getAuthority(), authority);
+            // hasRole('ADMIN') без склейки строки с префиксом на каждой проверке
+            if (authority.getAuthority().startsWith(ROLE_PREFIX)) {
+                lookup.putIfAbsent(authority.getAuthority().substring(ROLE_PREFIX.length()), authority);
+            }
+        }
+        this.known = names.size() == MAX_ROLES ? -1L : (1L << names.size()) - 1;
+        this.byName = Map.copyOf(lookup);
+
+        if (names.size() <= PREBUILT_ROLES) {
+            this.prebuilt = new List[1 << names.size()];
+            this.prebuiltNames = new List[1 << names.size()];
+            for (int mask = 0; mask < prebuilt.length; mask++) {
+                prebuilt[mask] = build(mask);
+                prebuiltNames[mask] = buildNames(mask);
+            }
+        } else {
+            this.prebuilt = null;
+            this.prebuiltNames = null;
+        }
+    }
+
+    // Имена ролей в порядке их номеров (id)
+    public static RoleIndex of(List<String> names) {
+        return new RoleIndex(names);
+    }
+
+    // Бит роли по полному ("ROLE_ADMIN") или короткому ("ADMIN") имени; 0 - такой роли нет
+    public long bit(String role) {
+        RoleAuthority authority = byName.get(role);
+        return authority != null ? authority.bit : 0L;
+    }
+
+    public long maskOfRoles(Collection<Role> roles) {
+        long mask = 0;
+        for (Role role : roles) {
+            mask |= bit(role.getName());
+        }
+        return mask;
+    }
+
+    // Маска по authorities аутентификации. Свои флайвейты узнаются по ссылке, без сравнения строк;
+    // чужие GrantedAuthority (старая сессия, другой источник) - по имени
+    public long maskOf(Collection<? extends GrantedAuthority> granted) {
+        long mask = 0;
+        if (granted instanceof List<? extends GrantedAuthority> list && granted instanceof RandomAccess) {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                mask |= bitOf(list.get(i));
+            }
+        } else {
+            for (GrantedAuthority authority : granted) {
+                mask |= bitOf(authority);
+            }
+        }
+        return mask;
+    }
+
+    // Общий неизменяемый список authorities для набора ролей
+    public List<GrantedAuthority> authorities(long mask) {
+        long valid = mask & known;
+        if (prebuilt != null) {
+            return prebuilt[(int) valid];
+        }
+        return combinations.computeIfAbsent(valid, this::build);
+    }
+
+    // Общий неизменяемый список имён ролей для набора - для представлений без GrantedAuthority
+    public List<String> names(long mask) {
+        long valid = mask & known;
+        if (prebuiltNames != null) {
+            return prebuiltNames[(int) valid];
+        }
+        return nameCombinations.computeIfAbsent(valid, this::buildNames);
+    }
+
+    public long maskOfNames(Collection<String> names) {
+        long mask = 0;
+        for (String name : names) {
+            RoleAuthority authority = byName.get(name);
+            if (authority != null && authority.getAuthority().equals(name)) {
+                mask |= authority.bit;
+            }
+        }
+        return mask;
+    }
+
+    // Authorities по именам ролей из токена: флайвейты, если все роли известны, иначе новый список
+    public List<GrantedAuthority> authoritiesOf(Collection<?> names) {
+        long mask = 0;
+        for (Object name : names) {
+            RoleAuthority authority = byName.get(name.toString());
+            if (authority == null || !authority.getAuthority().equals(name.toString())) {
+                List<GrantedAuthority> mixed = new ArrayList<>(names.size());
+                for (Object role : names) {
+                    mixed.add(new SimpleGrantedAuthority(role.toString()));
+                }
+                return mixed;
+            }
+            mask |= authority.bit;
+        }
+        return authorities(mask);
+    }
+
+    public static boolean hasAny(long granted, long required) {
+        return (granted & required) != 0;
+    }
+
+    private long bitOf(GrantedAuthority authority) {
+        if (authority instanceof RoleAuthority role
+                && role.index < authorities.length && authorities[role.index] == role) {
+            return role.bit;
+        }
+        RoleAuthority match = byName.get(authority.getAuthority());
+        return match != null && match.getAuthority().equals(authority.getAuthority()) ? match.bit : 0L;
+    }
+
+    private List<GrantedAuthority> build(long mask) {
+        List<GrantedAuthority> list = new ArrayList<>(Long.bitCount(mask));
+        for (int bit = 0; bit < authorities.length; bit++) {
+            if ((mask & (1L << bit)) != 0) {
+                list.add(authorities[bit]);
+            }
+        }
+        return List.copyOf(list);
+    }
+
+    private List<String> buildNames(long mask) {
+        List<String> list = new ArrayList<>(Long.bitCount(mask));
+        for (GrantedAuthority authority : authorities(mask)) {
+            list.add(authority.getAuthority());
+        }
+        return List.copyOf(list);
+    }
+
+    // Флайвейт роли: один экземпляр на роль на всё приложение
+    public static final class RoleAuthority implements GrantedAuthority {
+
+        private final String authority;
+        private final int index;
+        private final long bit;
+
+        private RoleAuthority(String authority, int index) {
+            this.authority = authority;
+            this.index = index;
+            this.bit = 1L << index;
+        }
+
+        @Override
+        public String getAuthority() {
+            return authority;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof RoleAuthority other && authority.equals(other.authority);
+        }
+
+        @Override
+        public int hashCode() {
+            return authority.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return authority;
+        }
+    }
+}
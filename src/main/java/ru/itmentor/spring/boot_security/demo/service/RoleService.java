@@ -2,10 +2,16 @@ package ru.itmentor.spring.boot_security.demo.service;
 
 import ru.itmentor.spring.boot_security.demo.model.Role;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface RoleService {
     List<Role> getAllRoles();
     Role findByName(String name);
     Role findById(Long id);
+    Set<Role> findByIds(Collection<Long> ids);
+    void refresh();
+    // Номера ролей для масок; загружает реестр, если его ещё нет
+    RoleIndex index();
 }
\ No newline at end of file
@@ -5,7 +5,15 @@ import org.springframework.stereotype.Service;
 import ru.itmentor.spring.boot_security.demo.model.Role;
 import ru.itmentor.spring.boot_security.demo.repository.RoleRepository;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Service
 public class RoleServiceImpl implements RoleService {
@@ -13,20 +21,102 @@ public class RoleServiceImpl implements RoleService {
     @Autowired
     private RoleRepository roleRepository;
 
+    // Роли почти не меняются: держим неизменяемый снимок и подменяем его целиком при refresh()
+    private volatile Registry registry;
+
+    // ReentrantLock вместо synchronized: запрос в БД под synchronized прикрепил бы виртуальный поток к носителю
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
     @Override
     public List<Role> getAllRoles() {
-        return roleRepository.findAll();
+        return registry().all;
     }
 
     @Override
     public Role findByName(String name) {
-        return roleRepository.findByName(name)
-                .orElseThrow(() -> new RuntimeException("Role not found: " + name));
+        Role role = registry().byName.get(name);
+        if (role == null) {
+            throw new RuntimeException("Role not found: " + name);
+        }
+        return role;
     }
 
     @Override
     public Role findById(Long id) {
-        return roleRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Role not found with id: " + id));
+        Role role = registry().byId.get(id);
+        if (role == null) {
+            throw new RuntimeException("Role not found with id: " + id);
+        }
+        return role;
+    }
+
+    @Override
+    public Set<Role> findByIds(Collection<Long> ids) {
+        Registry current = registry();
+        Set<Role> roles = new HashSet<>();
+        for (Long id : ids) {
+            Role role = current.byId.get(id);
+            if (role == null) {
+                throw new RuntimeException("Role not found with id: " + id);
+            }
+            roles.add(role);
+        }
+        return roles;
+    }
+
+    @Override
+    public RoleIndex index() {
+        return registry().index;
+    }
+
+    @Override
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            registry = new Registry(roleRepository.findAll());
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private Registry registry() {
+        Registry current = registry;
+        if (current == null) {
+            refreshLock.lock();
+            try {
+                if (registry == null) {
+                    refresh();
+                }
+                current = registry;
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    private static final class Registry {
+        private final List<Role> all;
+        private final Map<Long, Role> byId;
+        private final Map<String, Role> byName;
+        private final RoleIndex index;
+
+        private Registry(List<Role> roles) {
+            // Отвязанные от Hibernate копии без ленивой коллекции users; порядок по id задаёт биты ролей
+            this.all = roles.stream()
+                    .sorted(Comparator.comparing(Role::getId))
+                    .map(role -> new Role(role.getId(), role.getName(), null))
+                    .collect(Collectors.toUnmodifiableList());
+            this.index = RoleIndex.of(all.stream().map(Role::getName).collect(Collectors.toList()));
+
+            Map<Long, Role> ids = new HashMap<>();
+            Map<String, Role> names = new HashMap<>();
+            for (Role role : all) {
+                ids.put(role.getId(), role);
+                names.put(role.getName(), role);
+            }
+            this.byId = Map.copyOf(ids);
+            this.byName = Map.copyOf(names);
+        }
     }
-}
\ No newline at end of file
+}
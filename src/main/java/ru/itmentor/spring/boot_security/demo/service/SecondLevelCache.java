@@ -0,0 +1,80 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+import ru.itmentor.spring.boot_security.demo.model.User;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Регионы второго уровня Hibernate: имена, ручной сброс для записей в обход JPA
+// (JdbcTemplate в импорте и PATCH) и статистика попаданий по каждому региону.
+// Размеры и TTL регионов - в application.conf
+@Component
+public class SecondLevelCache {
+
+    public static final String ROLES = "roles";
+    public static final String USERS = "users";
+    public static final String USER_ROLES = "user-roles";
+    public static final String USER_QUERIES = "user-queries";
+    public static final String ROLE_QUERIES = "role-queries";
+
+    private static final List<String> DOMAIN_REGIONS = List.of(ROLES, USERS, USER_ROLES);
+    private static final List<String> QUERY_REGIONS = List.of(USER_QUERIES, ROLE_QUERIES);
+
+    private final SessionFactory sessionFactory;
+
+    public SecondLevelCache(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    // Пользователь изменён SQL-запросом: Hibernate об этом не знает
+    public void evictUser(long id) {
+        sessionFactory.getCache().evictEntityData(User.class, id);
+        sessionFactory.getCache().evictCollectionData(User.class.getName() + ".roles", id);
+        sessionFactory.getCache().evictQueryRegion(USER_QUERIES);
+    }
+
+    // Новые пользователи вставлены SQL-запросом: закэшированные "не найдено" по логину больше не верны
+    public void evictUserQueries() {
+        sessionFactory.getCache().evictQueryRegion(USER_QUERIES);
+    }
+
+    public void evictAll() {
+        sessionFactory.getCache().evictAllRegions();
+    }
+
+    public Map<String, Object> stats() {
+        Statistics statistics = sessionFactory.getStatistics();
+        Map<String, Object> regions = new LinkedHashMap<>();
+        if (!statistics.isStatisticsEnabled()) {
+            return regions;
+        }
+        for (String region : DOMAIN_REGIONS) {
+            regions.put(region, toMap(statistics.getDomainDataRegionStatistics(region)));
+        }
+        for (String region : QUERY_REGIONS) {
+            regions.put(region, toMap(statistics.getQueryRegionStatistics(region)));
+        }
+        return regions;
+    }
+
+    private static Map<String, Object> toMap(CacheRegionStatistics stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (stats == null) {
+            return map;
+        }
+        long hits = stats.getHitCount();
+        long misses = stats.getMissCount();
+        map.put("size", stats.getElementCountInMemory());
+        map.put("hits", hits);
+        map.put("misses", misses);
+        map.put("puts", stats.getPutCount());
+        map.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        return map;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket на ключ (логин, IP) без блокировок: состояние корзины - одно число,
+// "теоретическое время прибытия" следующего запроса (GCRA), обновляется через CAS.
+// Корзин не больше maxKeys, простаивающие вытесняются - полная корзина ничем не отличается от новой
+public class TokenBucketLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final Cache<String, AtomicLong> buckets;
+    private final Counter allowed;
+    private final Counter rejected;
+
+    public TokenBucketLimiter(String name, int capacity, Duration refillPeriod, long maxKeys, Duration idleTimeout,
+                              MeterRegistry meterRegistry) {
+        this.intervalNanos = refillPeriod.toNanos();
+        this.burstNanos = intervalNanos * capacity;
+        // Вытеснять раньше, чем корзина наполнится, нельзя - это сбросило бы ограничение
+        Duration idle = idleTimeout.compareTo(Duration.ofNanos(burstNanos)) > 0
+                ? idleTimeout
+                : Duration.ofNanos(burstNanos);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idle)
+                .build();
+
+        this.allowed = Counter.builder("security.ratelimit.requests")
+                .tag("limiter", name)
+                .tag("result", "allowed")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("security.ratelimit.requests")
+                .tag("limiter", name)
+                .tag("result", "rejected")
+                .register(meterRegistry);
+        Gauge.builder("security.ratelimit.buckets", buckets, Cache::estimatedSize)
+                .tag("limiter", name)
+                .register(meterRegistry);
+    }
+
+    // 0 - токен получен; иначе сколько наносекунд ждать до следующего
+    public long tryAcquire(String key) {
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong(Long.MIN_VALUE));
+        long now = System.nanoTime();
+        while (true) {
+            long tat = bucket.get();
+            long start = tat == Long.MIN_VALUE || tat - now < 0 ? now : tat;
+            long next = start + intervalNanos;
+            if (next - now > burstNanos) {
+                rejected.increment();
+                return next - now - burstNanos;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    public long size() {
+        return buckets.estimatedSize();
+    }
+}
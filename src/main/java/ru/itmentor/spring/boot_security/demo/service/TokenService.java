@@ -0,0 +1,193 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Подписанные HMAC-SHA256 токены в формате JWT (HS256).
+// Access-токен несёт имя и роли, поэтому проверяется без обращения к БД.
+// Refresh-токен несёт время входа (auth_time): обновление его сохраняет, и цепочка обновлений
+// обрывается через refresh-max-age после входа - дальше нужен новый вход с паролем.
+@Service
+public class TokenService {
+
+    public static final String TYPE_ACCESS = "access";
+    public static final String TYPE_REFRESH = "refresh";
+    public static final String CLAIM_AUTH_TIME = "auth_time";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final String HEADER = ENCODER.encodeToString(
+            "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final ObjectMapper objectMapper;
+    private final RoleService roleService;
+    private final Duration accessTokenTtl;
+    private final Duration refreshTokenTtl;
+    private final Duration refreshMaxAge;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    public TokenService(ObjectMapper objectMapper,
+                        RoleService roleService,
+                        @Value("${app.security.token.secret:}") String secret,
+                        @Value("${app.security.token.access-ttl:15m}") Duration accessTokenTtl,
+                        @Value("${app.security.token.refresh-ttl:7d}") Duration refreshTokenTtl,
+                        @Value("${app.security.token.refresh-max-age:30d}") Duration refreshMaxAge) {
+        this.objectMapper = objectMapper;
+        this.roleService = roleService;
+        this.accessTokenTtl = accessTokenTtl;
+        this.refreshTokenTtl = refreshTokenTtl;
+        this.refreshMaxAge = refreshMaxAge;
+
+        // Без общего секрета токены действительны только на этом узле и до рестарта
+        byte[] keyBytes;
+        if (secret.isEmpty()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = Base64.getDecoder().decode(secret);
+        }
+        this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String createAccessToken(Authentication authentication) {
+        return createAccessToken(authentication.getName(), authentication.getAuthorities());
+    }
+
+    public String createAccessToken(String username, Collection<? extends GrantedAuthority> authorities) {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("roles", AuthorityUtils.authorityListToSet(authorities));
+        return sign(username, TYPE_ACCESS, accessTokenTtl, claims);
+    }
+
+    // Refresh-токен при входе по паролю
+    public String createRefreshToken(String username) {
+        return createRefreshToken(username, System.currentTimeMillis() / 1000);
+    }
+
+    // Следующий refresh-токен цепочки: время входа переносится, срок не выходит за refresh-max-age
+    public String createRefreshToken(String username, long authTime) {
+        long now = System.currentTimeMillis() / 1000;
+        Duration ttl = Duration.ofSeconds(Math.min(refreshTokenTtl.getSeconds(),
+                authTime + refreshMaxAge.getSeconds() - now));
+        return sign(username, TYPE_REFRESH, ttl, Map.of(CLAIM_AUTH_TIME, authTime));
+    }
+
+    // Время входа из claims refresh-токена; у токенов без auth_time - время выпуска
+    public static long authTime(Map<String, Object> claims) {
+        Object authTime = claims.getOrDefault(CLAIM_AUTH_TIME, claims.get("iat"));
+        return authTime instanceof Number number ? number.longValue() : 0;
+    }
+
+    public long getAccessTokenTtlSeconds() {
+        return accessTokenTtl.getSeconds();
+    }
+
+    // Проверяет подпись, тип и срок действия; null если токен невалиден
+    public Map<String, Object> verify(String token, String expectedType) {
+        int firstDot = token.indexOf('.');
+        int lastDot = token.lastIndexOf('.');
+        if (firstDot <= 0 || lastDot == firstDot) {
+            return null;
+        }
+        if (!HEADER.equals(token.substring(0, firstDot))) {
+            return null;
+        }
+
+        byte[] signature;
+        try {
+            signature = DECODER.decode(token.substring(lastDot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(signature, hmac(token.substring(0, lastDot)))) {
+            return null;
+        }
+
+        Map<String, Object> claims;
+        try {
+            claims = objectMapper.readValue(DECODER.decode(token.substring(firstDot + 1, lastDot)),
+                    new TypeReference<Map<String, Object>>() { });
+        } catch (Exception e) {
+            return null;
+        }
+
+        if (!expectedType.equals(claims.get("typ"))) {
+            return null;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        Object exp = claims.get("exp");
+        if (!(exp instanceof Number) || ((Number) exp).longValue() < now) {
+            return null;
+        }
+        // Цепочка обновлений старше refresh-max-age - даже если сам токен ещё не истёк
+        if (TYPE_REFRESH.equals(expectedType) && authTime(claims) + refreshMaxAge.getSeconds() < now) {
+            return null;
+        }
+        return claims;
+    }
+
+    // Известные роли - общими флайвейтами RoleIndex, без нового объекта на каждый запрос
+    public List<GrantedAuthority> authorities(Map<String, Object> claims) {
+        Object roles = claims.get("roles");
+        if (!(roles instanceof Collection<?> names)) {
+            return List.of();
+        }
+        return roleService.index().authoritiesOf(names);
+    }
+
+    private String sign(String username, String type, Duration ttl, Map<String, Object> extraClaims) {
+        long now = System.currentTimeMillis() / 1000;
+
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", username);
+        claims.put("typ", type);
+        claims.put("iat", now);
+        claims.put("exp", now + ttl.getSeconds());
+        claims.putAll(extraClaims);
+
+        String payload;
+        try {
+            payload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot serialize token claims", e);
+        }
+
+        String unsigned = HEADER + "." + payload;
+        return unsigned + "." + ENCODER.encodeToString(hmac(unsigned));
+    }
+
+    private byte[] hmac(String data) {
+        return mac.get().doFinal(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac hmac = Mac.getInstance(HMAC_ALGORITHM);
+            hmac.init(key);
+            return hmac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC is not available", e);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+// Пользователь создан или изменён; публикуется внутри пишущей транзакции, слушатели получают его после коммита
+public record UserChangedEvent(UserView user) {
+}
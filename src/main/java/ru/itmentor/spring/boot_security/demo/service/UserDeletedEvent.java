@@ -0,0 +1,5 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+// Пользователь удалён; как и UserChangedEvent, доставляется слушателям после коммита
+public record UserDeletedEvent(long id) {
+}
@@ -1,37 +1,93 @@
 package ru.itmentor.spring.boot_security.demo.service;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.userdetails.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import ru.itmentor.spring.boot_security.demo.model.Role;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.itmentor.spring.boot_security.demo.model.User;
 import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
 
-import java.util.stream.Collectors;
-
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
 
-    @Autowired
-    private UserRepository userRepository;
+    private final UserRepository userRepository;
+    private final RoleService roleService;
+
+    // Готовые UserDetails по имени пользователя; размер и вытеснение задаются спецификацией Caffeine
+    private final Cache<String, AccountDetails> cache;
+
+    public UserDetailsServiceImpl(UserRepository userRepository,
+                                  RoleService roleService,
+                                  @Value("${app.security.user-details-cache.spec:maximumSize=10000,expireAfterAccess=10m}")
+                                  String cacheSpec) {
+        this.userRepository = userRepository;
+        this.roleService = roleService;
+        this.cache = Caffeine.from(cacheSpec)
+                .recordStats()
+                .build();
+    }
 
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        ru.itmentor.spring.boot_security.demo.model.User user = userRepository
-                .findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-
-        return User.builder()
-                .username(user.getUsername())
-                .password(user.getPassword())
-                .roles(user.getRoles().stream()
-                        .map(Role::getName)
-                        .map(name -> name.replace("ROLE_", ""))
-                        .toArray(String[]::new))
-                .build();
+        AccountDetails details = cache.get(username, this::loadAccount);
+        if (details == null) {
+            throw new UsernameNotFoundException("User not found: " + username);
+        }
+        return new AccountDetails(details);
+    }
+
+    // Сбрасываем сразу и ещё раз после коммита, как и CredentialCache
+    public void evict(String username) {
+        if (username == null) {
+            return;
+        }
+        cache.invalidate(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(username);
+                }
+            });
+        }
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private AccountDetails loadAccount(String username) {
+        User user = userRepository.findByUsername(username).orElse(null);
+        if (user == null) {
+            return null;
+        }
+
+        // Роли - битами; authorities - общий список для этой комбинации ролей
+        RoleIndex roles = roleService.index();
+        long roleMask = roles.maskOfRoles(user.getRoles());
+        return new AccountDetails(
+                user.getId(),
+                user.getUsername(),
+                user.getPassword(),
+                user.getName(),
+                user.getLastName(),
+                user.getAge(),
+                user.getVersion(),
+                roleMask,
+                roles.authorities(roleMask));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Потоковая выгрузка пользователей в NDJSON или CSV.
+// Строки читаются серверным курсором (fetch size) в read-only транзакции и сразу пишутся в ответ,
+// сущности и persistence context не используются, поэтому память не растёт с размером таблицы.
+@Service
+public class UserExportService {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    // Допустимые поля выгрузки и соответствующие им выражения SQL
+    public static final Map<String, String> COLUMNS;
+
+    static {
+        Map<String, String> columns = new LinkedHashMap<>();
+        columns.put("id", "u.id");
+        columns.put("username", "u.username");
+        columns.put("name", "u.name");
+        columns.put("lastName", "u.lastname");
+        columns.put("age", "u.age");
+        columns.put("roles", "(select string_agg(r.name, ';' order by r.name) from user_roles ur"
+                + " join roles r on r.id = ur.role_id where ur.user_id = u.id)");
+        COLUMNS = Map.copyOf(columns);
+    }
+
+    public static final List<String> DEFAULT_FIELDS = List.of("id", "username", "name", "lastName", "age", "roles");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public UserExportService(DataSource dataSource,
+                             ObjectMapper objectMapper,
+                             @Value("${app.export.fetch-size:1000}") int fetchSize) {
+        // Отдельный JdbcTemplate: fetch size включает курсор PostgreSQL вместо чтения всего результата
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(readOnly = true)
+    public void export(String format, List<String> fields, OutputStream out) throws IOException {
+        for (String field : fields) {
+            if (!COLUMNS.containsKey(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("select ");
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(COLUMNS.get(fields.get(i)));
+        }
+        sql.append(" from users u order by u.id");
+
+        if (FORMAT_CSV.equals(format)) {
+            exportCsv(sql.toString(), fields, out);
+        } else {
+            exportNdjson(sql.toString(), fields, out);
+        }
+    }
+
+    private void exportNdjson(String sql, List<String> fields, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Разделитель строк пишем сами, пробел между корневыми объектами не нужен
+            generator.setRootValueSeparator(null);
+            jdbcTemplate.query(sql, rs -> {
+                try {
+                    generator.writeStartObject();
+                    for (int i = 0; i < fields.size(); i++) {
+                        writeJsonField(generator, fields.get(i), rs, i + 1);
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void exportCsv(String sql, List<String> fields, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(String.join(",", fields));
+        writer.write('\n');
+        jdbcTemplate.query(sql, rs -> {
+            try {
+                for (int i = 0; i < fields.size(); i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writeCsvValue(writer, rs.getString(i + 1));
+                }
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private static void writeJsonField(JsonGenerator generator, String field, ResultSet rs, int column)
+            throws IOException, SQLException {
+        switch (field) {
+            case "id" -> generator.writeNumberField(field, rs.getLong(column));
+            case "age" -> {
+                int age = rs.getInt(column);
+                if (rs.wasNull()) {
+                    generator.writeNullField(field);
+                } else {
+                    generator.writeNumberField(field, age);
+                }
+            }
+            case "roles" -> {
+                String roles = rs.getString(column);
+                generator.writeArrayFieldStart(field);
+                if (roles != null) {
+                    for (String role : roles.split(";")) {
+                        generator.writeString(role);
+                    }
+                }
+                generator.writeEndArray();
+            }
+            default -> generator.writeStringField(field, rs.getString(column));
+        }
+    }
+
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
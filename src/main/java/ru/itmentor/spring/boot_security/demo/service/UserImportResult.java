@@ -0,0 +1,43 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Итог массового импорта: счётчики и ошибки по строкам (список ошибок ограничен)
+public class UserImportResult {
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private long imported;
+    private long failed;
+    private final List<Map<String, Object>> errors = new ArrayList<>();
+
+    synchronized void addImported(long count) {
+        imported += count;
+    }
+
+    synchronized void addError(long line, String username, String message) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("line", line);
+            error.put("username", username);
+            error.put("message", message);
+            errors.add(error);
+        }
+    }
+
+    public synchronized long getImported() {
+        return imported;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized List<Map<String, Object>> getErrors() {
+        return List.copyOf(errors);
+    }
+}
@@ -0,0 +1,412 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.model.Role;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Массовый импорт пользователей из NDJSON или CSV.
+// Входной поток читается порциями: пароли хешируются параллельно на ограниченном пуле,
+// затем users и user_roles вставляются JDBC-батчами с заранее выбранными id из последовательности.
+@Service
+public class UserImportService {
+
+    private static final String NEXT_IDS_SQL =
+            "select nextval(pg_get_serial_sequence('users', 'id')) from generate_series(1, ?)";
+    private static final String INSERT_USER_SQL =
+            "insert into users (id, username, password, name, lastname, age) values (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_USER_ROLE_SQL =
+            "insert into user_roles (user_id, role_id) values (?, ?)";
+    private static final String EXISTING_USERNAMES_SQL =
+            "select username from users where username in (:usernames)";
+
+    private static final String DEFAULT_ROLE = "ROLE_USER";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final RoleService roleService;
+    private final ObjectMapper objectMapper;
+    private final SecondLevelCache secondLevelCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int hashThreads;
+    private final ExecutorService hashingPool;
+
+    public UserImportService(JdbcTemplate jdbcTemplate,
+                             NamedParameterJdbcTemplate namedJdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             PasswordEncoder passwordEncoder,
+                             RoleService roleService,
+                             ObjectMapper objectMapper,
+                             SecondLevelCache secondLevelCache,
+                             ApplicationEventPublisher eventPublisher,
+                             @Value("${app.import.batch-size:1000}") int batchSize,
+                             @Value("${app.import.hash-threads:0}") int hashThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.roleService = roleService;
+        this.objectMapper = objectMapper;
+        this.secondLevelCache = secondLevelCache;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.hashThreads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+
+        // Пул фиксированного размера с ограниченной очередью: BCrypt не займёт больше ядер, чем задано
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.hashingPool = new ThreadPoolExecutor(this.hashThreads, this.hashThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.hashThreads * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "user-import-hash-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingPool.shutdown();
+    }
+
+    public UserImportResult importNdjson(InputStream input) throws IOException {
+        UserImportResult result = new UserImportResult();
+        List<ImportRow> chunk = new ArrayList<>(batchSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    chunk.add(toRow(lineNumber,
+                            text(node, "username"),
+                            text(node, "password"),
+                            text(node, "name"),
+                            text(node, "lastName"),
+                            text(node, "age"),
+                            roleNames(node.get("roles"))));
+                } catch (Exception e) {
+                    result.addError(lineNumber, null, e.getMessage());
+                }
+                if (chunk.size() >= batchSize) {
+                    processChunk(chunk, result);
+                    chunk = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        processChunk(chunk, result);
+        return result;
+    }
+
+    // Первая непустая строка CSV - заголовок: username,password,name,lastName,age,roles (роли через ';')
+    public UserImportResult importCsv(InputStream input) throws IOException {
+        UserImportResult result = new UserImportResult();
+        List<ImportRow> chunk = new ArrayList<>(batchSize);
+        Map<String, Integer> columns = null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            CsvReader csv = new CsvReader(reader);
+            List<String> values;
+            while ((values = csv.next()) != null) {
+                long lineNumber = csv.recordLine();
+                if (values.size() == 1 && values.get(0).isBlank()) {
+                    continue;
+                }
+                if (columns == null) {
+                    columns = new HashMap<>();
+                    for (int i = 0; i < values.size(); i++) {
+                        columns.put(values.get(i).trim().toLowerCase(Locale.ROOT), i);
+                    }
+                    continue;
+                }
+                try {
+                    String roles = column(values, columns, "roles");
+                    chunk.add(toRow(lineNumber,
+                            column(values, columns, "username"),
+                            column(values, columns, "password"),
+                            column(values, columns, "name"),
+                            column(values, columns, "lastname"),
+                            column(values, columns, "age"),
+                            roles == null || roles.isBlank() ? List.of() : List.of(roles.split(";"))));
+                } catch (Exception e) {
+                    result.addError(lineNumber, column(values, columns, "username"), e.getMessage());
+                }
+                if (chunk.size() >= batchSize) {
+                    processChunk(chunk, result);
+                    chunk = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        processChunk(chunk, result);
+        return result;
+    }
+
+    private void processChunk(List<ImportRow> chunk, UserImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<ImportRow> rows = removeDuplicates(chunk, result);
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        hashPasswords(rows);
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insertRows(rows));
+            result.addImported(rows.size());
+            indexRows(rows);
+        } catch (DataAccessException e) {
+            // Батч упал (например, логин заняли параллельно) - вставляем по одной, чтобы найти виноватых
+            for (ImportRow row : rows) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insertRows(List.of(row)));
+                    result.addImported(1);
+                    indexRows(List.of(row));
+                } catch (DataAccessException rowError) {
+                    result.addError(row.line, row.username, rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        secondLevelCache.evictUserQueries();
+    }
+
+    // Дубликаты внутри порции и уже существующие логины отсекаем до хеширования
+    private List<ImportRow> removeDuplicates(List<ImportRow> chunk, UserImportResult result) {
+        Set<String> usernames = new HashSet<>();
+        for (ImportRow row : chunk) {
+            usernames.add(row.username);
+        }
+        Set<String> existing = new HashSet<>(namedJdbcTemplate.queryForList(
+                EXISTING_USERNAMES_SQL, Map.of("usernames", usernames), String.class));
+
+        Set<String> seen = new HashSet<>();
+        List<ImportRow> rows = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            if (existing.contains(row.username)) {
+                result.addError(row.line, row.username, "Username is already taken");
+            } else if (!seen.add(row.username)) {
+                result.addError(row.line, row.username, "Duplicate username in import");
+            } else {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private void hashPasswords(List<ImportRow> rows) {
+        int sliceSize = (rows.size() + hashThreads - 1) / hashThreads;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(hashThreads);
+        for (int from = 0; from < rows.size(); from += sliceSize) {
+            List<ImportRow> slice = rows.subList(from, Math.min(from + sliceSize, rows.size()));
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (ImportRow row : slice) {
+                    row.passwordHash = passwordEncoder.encode(row.password);
+                    row.password = null;
+                }
+            }, hashingPool));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void insertRows(List<ImportRow> rows) {
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS_SQL, Long.class, rows.size());
+        List<long[]> userRoles = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            row.id = ids.get(i);
+            for (Role role : row.roles) {
+                userRoles.add(new long[]{row.id, role.getId()});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_USER_SQL, rows, batchSize, (ps, row) -> {
+            ps.setLong(1, row.id);
+            ps.setString(2, row.username);
+            ps.setString(3, row.passwordHash);
+            ps.setString(4, row.name);
+            ps.setString(5, row.lastName);
+            ps.setInt(6, row.age);
+        });
+        jdbcTemplate.batchUpdate(INSERT_USER_ROLE_SQL, userRoles, batchSize, (ps, pair) -> {
+            ps.setLong(1, pair[0]);
+            ps.setLong(2, pair[1]);
+        });
+    }
+
+    // Новые пользователи сразу доступны в поиске и модели чтения; версия 0 - значение по умолчанию колонки
+    private void indexRows(List<ImportRow> rows) {
+        for (ImportRow row : rows) {
+            eventPublisher.publishEvent(new UserChangedEvent(new UserView(row.id, row.username, row.name,
+                    row.lastName, row.age, 0L, row.roles.stream().map(Role::getName).collect(Collectors.toList()))));
+        }
+    }
+
+    private ImportRow toRow(long line, String username, String password, String name, String lastName,
+                            String age, List<String> roleNames) {
+        if (username == null || username.isBlank() || password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Username and password are required");
+        }
+
+        ImportRow row = new ImportRow();
+        row.line = line;
+        row.username = username;
+        row.password = password;
+        row.name = name != null ? name : "";
+        row.lastName = lastName != null ? lastName : "";
+        row.age = age != null && !age.isBlank() ? Integer.parseInt(age.trim()) : 0;
+
+        Set<Role> roles = new HashSet<>();
+        for (String roleName : roleNames.isEmpty() ? List.of(DEFAULT_ROLE) : roleNames) {
+            roles.add(roleService.findByName(roleName.trim()));
+        }
+        row.roles = roles;
+        return row;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static List<String> roleNames(JsonNode roles) {
+        if (roles == null || !roles.isArray()) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>(roles.size());
+        roles.forEach(role -> names.add(role.asText()));
+        return names;
+    }
+
+    private static String column(List<String> values, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index != null && index < values.size() ? values.get(index) : null;
+    }
+
+    // Чтение CSV по записям, а не по строкам: поле в кавычках может содержать запятые, кавычки ("")
+    // и переводы строк - так выгружает UserExportService. Записи разделяются \n, \r\n или \r
+    static final class CsvReader {
+        private final Reader reader;
+        private long line;
+        private long recordLine;
+        private int pending = -1;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        // Номер физической строки, с которой началась последняя запись
+        long recordLine() {
+            return recordLine;
+        }
+
+        // null - конец потока
+        List<String> next() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            recordLine = ++line;
+            List<String> values = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            while (c >= 0) {
+                if (quoted) {
+                    if (c == '"') {
+                        int next = read();
+                        if (next != '"') {
+                            quoted = false;
+                            c = next;
+                            continue;
+                        }
+                        current.append('"');
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        current.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(current.toString());
+                    current.setLength(0);
+                } else if (c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        int next = read();
+                        if (next != '\n') {
+                            pending = next;
+                        }
+                    }
+                    break;
+                } else {
+                    current.append((char) c);
+                }
+                c = read();
+            }
+            values.add(current.toString());
+            return values;
+        }
+
+        private int read() throws IOException {
+            if (pending >= 0) {
+                int c = pending;
+                pending = -1;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+
+    private static final class ImportRow {
+        private long line;
+        private long id;
+        private String username;
+        private String password;
+        private String passwordHash;
+        private String name;
+        private String lastName;
+        private int age;
+        private Set<Role> roles;
+    }
+}
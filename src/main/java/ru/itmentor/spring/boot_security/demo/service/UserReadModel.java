@@ -0,0 +1,339 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.itmentor.spring.boot_security.demo.dto.UserPageKeys;
+import ru.itmentor.spring.boot_security.demo.dto.UserVersion;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Денормализованная модель чтения пользователей (CQRS): GET /api/users, /api/users/{id} и /api/auth/me
+// читаются из памяти без транзакции, Hibernate и пула соединений. Запись - компактная строка с полями
+// пользователя и ролями одним long по RoleIndex; UserView собирается на чтении, списки ролей общие.
+// Обновляется событиями UserServiceImpl и импорта после коммита, при старте загружается одним запросом.
+// События приходят только с этого узла, поэтому промах дочитывается из БД (fetch), а периодическая сверка
+// по (id, version) подхватывает записи других узлов и записи мимо UserServiceImpl
+@Component
+public class UserReadModel implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(UserReadModel.class);
+
+    private static final String LOAD_SQL = "select u.id, u.username, u.name, u.lastname, u.age, u.version,"
+            + " (select string_agg(r.name, ';') from user_roles ur join roles r on r.id = ur.role_id"
+            + " where ur.user_id = u.id)"
+            + " from users u";
+    // Вне транзакции: с primary, даже если чтение идёт через реплики
+    private static final String FETCH_SQL = LOAD_SQL + " where u.id = ?";
+    private static final String FETCH_BY_USERNAME_SQL = LOAD_SQL + " where u.username = ?";
+
+    // Возраст не задан
+    private static final int NO_AGE = Integer.MIN_VALUE;
+
+    // Отсортированная карта - страницы по курсору after без сортировки; по логину - для токенов без id
+    private final ConcurrentSkipListMap<Long, Row> byId = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Row> byUsername = new ConcurrentHashMap<>();
+
+    // Удалённые во время первичной загрузки: загрузчик не должен их вернуть
+    private final Set<Long> removedDuringBuild = ConcurrentHashMap.newKeySet();
+
+    private final RoleService roleService;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final Duration reconcileInterval;
+
+    private volatile boolean ready;
+    private ScheduledExecutorService reconciler;
+
+    public UserReadModel(DataSource dataSource,
+                         PlatformTransactionManager transactionManager,
+                         RoleService roleService,
+                         UserRepository userRepository,
+                         @Value("${app.read-model.enabled:true}") boolean enabled,
+                         @Value("${app.read-model.fetch-size:1000}") int fetchSize,
+                         @Value("${app.read-model.reconcile-interval:1m}") Duration reconcileInterval) {
+        // Таблица читается курсором порциями fetchSize, а не целиком в память драйвера
+        this.roleService = roleService;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+        this.reconcileInterval = reconcileInterval;
+    }
+
+    // Строка модели: 56 байт заголовка и полей при сжатых ссылках, плюс три строки
+    private static final class Row {
+        final long id;
+        final long version;
+        final long roleMask;
+        final int age;
+        final String username;
+        final String name;
+        final String lastName;
+        // Снимок, по которому построена маска: смена ролей не требует пересчёта существующих строк
+        final RoleIndex roles;
+
+        Row(UserView view, RoleIndex roles) {
+            this.id = view.id();
+            this.version = view.version() != null ? view.version() : 0L;
+            this.roleMask = view.roles() != null ? roles.maskOfNames(view.roles()) : 0L;
+            this.age = view.age() != null ? view.age() : NO_AGE;
+            this.username = view.username();
+            this.name = view.name();
+            this.lastName = view.lastName();
+            this.roles = roles;
+        }
+
+        UserView toView(boolean withRoles) {
+            return new UserView(id, username, name, lastName, age == NO_AGE ? null : age, version,
+                    withRoles ? roles.names(roleMask) : List.of());
+        }
+    }
+
+    // До окончания загрузки (или при app.read-model.enabled=false) чтение идёт в БД
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // Первичная загрузка после DataInitializer; приложение не ждёт её окончания
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            load();
+            if (ready) {
+                scheduleReconcile();
+            }
+        }, "user-read-model-load");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void load() {
+        long started = System.nanoTime();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(LOAD_SQL, rs -> {
+                UserView view = toView(rs);
+                if (!removedDuringBuild.contains(view.id())) {
+                    put(view);
+                }
+            }));
+            ready = true;
+            removedDuringBuild.clear();
+            log.info("User read model loaded: {} users in {} ms", byId.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            log.warn("User read model load failed, reads stay on the database", e);
+        }
+    }
+
+    // Строка пользователя из БД заменяет запись модели; null - пользователя нет, запись удаляется
+    public UserView fetch(long id) {
+        List<UserView> rows = jdbcTemplate.query(FETCH_SQL, (rs, rowNum) -> toView(rs), id);
+        if (rows.isEmpty()) {
+            remove(id);
+            return null;
+        }
+        put(rows.get(0));
+        return get(id);
+    }
+
+    public UserView fetchByUsername(String username) {
+        List<UserView> rows = jdbcTemplate.query(FETCH_BY_USERNAME_SQL, (rs, rowNum) -> toView(rs), username);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        put(rows.get(0));
+        return getByUsername(username);
+    }
+
+    // Сверка порциями по id: строки, которых нет в модели или у которых в БД версия новее, перечитываются;
+    // строки модели, которых нет в порции, перепроверяются по одной (реплика может отставать) и удаляются
+    public int reconcile() {
+        int fixed = 0;
+        long after = 0;
+        Slice<UserVersion> batch;
+        do {
+            batch = userRepository.findVersionsAfter(after, PageRequest.of(0, fetchSize));
+            List<UserVersion> versions = batch.getContent();
+            long last = batch.hasNext() ? versions.get(versions.size() - 1).getId() : Long.MAX_VALUE;
+            Set<Long> present = new HashSet<>();
+            for (UserVersion version : versions) {
+                present.add(version.getId());
+                Long current = getVersion(version.getId());
+                if (current == null || current < version.getVersion()) {
+                    fetch(version.getId());
+                    fixed++;
+                }
+            }
+            for (Long id : List.copyOf(byId.subMap(after, false, last, true).keySet())) {
+                if (!present.contains(id)) {
+                    fetch(id);
+                    fixed++;
+                }
+            }
+            after = last;
+        } while (batch.hasNext());
+        return fixed;
+    }
+
+    private void scheduleReconcile() {
+        if (reconcileInterval.isZero() || reconcileInterval.isNegative()) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-read-model-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = reconcileInterval.toMillis();
+        reconciler.scheduleWithFixedDelay(() -> {
+            // Исключение остановило бы расписание: следующая сверка повторит попытку
+            try {
+                int fixed = reconcile();
+                if (fixed > 0) {
+                    log.info("User read model reconciled: {} users reloaded", fixed);
+                }
+            } catch (Exception e) {
+                log.warn("User read model reconcile failed", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        put(event.user());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        remove(event.id());
+    }
+
+    // Записи редки по сравнению с чтением: две карты меняются под одним монитором, чтение без блокировок
+    public synchronized void put(UserView view) {
+        Row old = byId.get(view.id());
+        // Более старая версия (например, из параллельной загрузки) не перетирает новую
+        if (old != null && view.version() != null && old.version > view.version()) {
+            return;
+        }
+        Row row = new Row(view, roleService.index());
+        byId.put(row.id, row);
+        if (old != null && !old.username.equals(row.username)) {
+            byUsername.remove(old.username, old);
+        }
+        byUsername.put(row.username, row);
+    }
+
+    public synchronized void remove(long id) {
+        if (!ready) {
+            removedDuringBuild.add(id);
+        }
+        Row old = byId.remove(id);
+        if (old != null) {
+            byUsername.remove(old.username, old);
+        }
+    }
+
+    // null - пользователя нет
+    public UserView get(long id) {
+        return get(id, true);
+    }
+
+    public UserView get(long id, boolean withRoles) {
+        Row row = byId.get(id);
+        return row != null ? row.toView(withRoles) : null;
+    }
+
+    public UserView getByUsername(String username) {
+        Row row = byUsername.get(username);
+        return row != null ? row.toView(true) : null;
+    }
+
+    public Long getVersion(long id) {
+        Row row = byId.get(id);
+        return row != null ? row.version : null;
+    }
+
+    // То же, что UserService.getUserPageKeys, но обходом карты от курсора; ETag совпадает с посчитанным по БД
+    public UserPageKeys getPageKeys(Long afterId, int limit) {
+        int size = Math.max(1, Math.min(limit, UserService.MAX_PAGE_SIZE));
+        long after = afterId != null ? afterId : 0L;
+        List<Long> ids = new ArrayList<>(size);
+        long hash = UserPageKeys.ETAG_SEED;
+        boolean hasMore = false;
+        for (Row row : byId.tailMap(after, false).values()) {
+            if (ids.size() == size) {
+                hasMore = true;
+                break;
+            }
+            ids.add(row.id);
+            hash = UserPageKeys.mix(hash, row.id, row.version);
+        }
+        return new UserPageKeys(ids, hasMore, UserPageKeys.etag(hash, hasMore));
+    }
+
+    // Удалённые между фазами чтения страницы пропускаются, как и при чтении из БД
+    public List<UserView> getViews(List<Long> ids, boolean withRoles) {
+        List<UserView> views = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Row row = byId.get(id);
+            if (row != null) {
+                views.add(row.toView(withRoles));
+            }
+        }
+        return views;
+    }
+
+    private static UserView toView(ResultSet rs) throws SQLException {
+        int age = rs.getInt(5);
+        Integer ageValue = rs.wasNull() ? null : age;
+        String roles = rs.getString(7);
+        return new UserView(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), ageValue,
+                rs.getLong(6), roles == null ? List.of() : Arrays.asList(roles.split(";")));
+    }
+}
@@ -0,0 +1,791 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Индекс для поиска пользователей по началу логина, имени, фамилии или любого слова в них.
+// Токены (части слов из одних букв или цифр, а отдельно - слова с буквами и цифрами и поля
+// с разделителями, в нижнем регистре) лежат в отсортированных картах, поиск по префиксу - это обход
+// диапазона от q до q + Character.MAX_VALUE без обращения к БД.
+// Кандидаты - объединение отсортированных списков id самого редкого слова запроса или роли из фильтра,
+// остальные слова их сужают: пересечением списков или, если слово намного шире кандидатов,
+// проверкой записи пользователя.
+// Запрос из одного частого префикса не ранжирует всех совпавших: при первом таком запросе для префикса
+// строится список лучших пользователей, который дальше обновляется вместе с индексом.
+// Записи обновляются событиями UserServiceImpl и импорта после коммита; при старте индекс
+// строится параллельно по диапазонам id. Порядок применения изменений определяет версия пользователя
+@Component
+public class UserSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+
+    public static final int MAX_LIMIT = 100;
+
+    // Префикс, под которым столько id, получает список лучших
+    private static final int TOP_LIST_THRESHOLD = 2000;
+    // Запас списка лучших сверх MAX_LIMIT: удаления не заставляют пересчитывать его сразу
+    private static final int TOP_CAPACITY = 2 * MAX_LIMIT;
+    // Слово с записями в столько раз больше кандидатов проверяется по записи пользователя, а не пересечением
+    private static final int LOOKUP_RATIO = 64;
+    // Списки, различающиеся по длине сильнее, пересекаются двоичным поиском, а не слиянием
+    private static final int MERGE_RATIO = 16;
+    // Столько списков объединяются слиянием, больше - сортировкой
+    private static final int MERGE_PARTS = 8;
+
+    private static final String LOAD_SQL = "select u.id, u.username, u.name, u.lastname, u.age, u.version,"
+            + " (select string_agg(r.name, ';') from user_roles ur join roles r on r.id = ur.role_id"
+            + " where ur.user_id = u.id)"
+            + " from users u where u.id >= ? and u.id < ?";
+
+    private final ConcurrentHashMap<Long, Entry> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Postings> tokens = new ConcurrentSkipListMap<>();
+    // Слова с буквами и цифрами и поля с разделителями ("petrov123", "ivan.petrov123") отдельно:
+    // слово запроса из одних букв находит их по частям, и диапазоны частей не раздуваются
+    private final ConcurrentSkipListMap<String, Postings> phrases = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Postings> roles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TopList> topLists = new ConcurrentHashMap<>();
+
+    // Изменения идут под общей блокировкой, построение списка лучших - под эксклюзивной:
+    // список строится по согласованному снимку, и ни одно незавершённое изменение его не обходит
+    private final ReentrantReadWriteLock writes = new ReentrantReadWriteLock();
+
+    // Удалённые во время первичной загрузки: загрузчик не должен их вернуть
+    private final Set<Long> removedDuringBuild = ConcurrentHashMap.newKeySet();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int rebuildThreads;
+    private final ExecutorService rebuildExecutor;
+
+    private volatile boolean ready;
+
+    public UserSearchIndex(DataSource dataSource,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${app.search.rebuild-threads:0}") int rebuildThreads,
+                           @Value("${app.search.fetch-size:1000}") int fetchSize) {
+        // Отдельный JdbcTemplate с fetch size: диапазон читается курсором, а не целиком в память
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.rebuildThreads = rebuildThreads > 0 ? rebuildThreads : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.rebuildExecutor = Executors.newFixedThreadPool(this.rebuildThreads, runnable -> {
+            Thread thread = new Thread(runnable, "user-search-rebuild-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    // Первичная загрузка после DataInitializer; приложение не ждёт её окончания
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        Thread thread = new Thread(this::rebuild, "user-search-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void rebuild() {
+        long started = System.nanoTime();
+        try {
+            Map<String, Object> bounds = jdbcTemplate.queryForMap("select min(id) as lo, max(id) as hi from users");
+            if (bounds.get("lo") != null) {
+                long lo = ((Number) bounds.get("lo")).longValue();
+                long hi = ((Number) bounds.get("hi")).longValue() + 1;
+                // Диапазонов больше, чем потоков: неравномерные дыры в id не оставляют потоки без работы
+                int ranges = rebuildThreads * 4;
+                long step = Math.max(1, (hi - lo + ranges - 1) / ranges);
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (long from = lo; from < hi; from += step) {
+                    long start = from;
+                    long end = Math.min(hi, from + step);
+                    futures.add(rebuildExecutor.submit(() -> loadRange(start, end)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            ready = true;
+            removedDuringBuild.clear();
+            log.info("User search index built: {} users in {} ms", users.size(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("User search index rebuild failed", e);
+        }
+    }
+
+    private void loadRange(long from, long to) {
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(LOAD_SQL, rs -> {
+            long id = rs.getLong(1);
+            int age = rs.getInt(5);
+            Integer ageValue = rs.wasNull() ? null : age;
+            String roles = rs.getString(7);
+            UserView view = new UserView(id, rs.getString(2), rs.getString(3), rs.getString(4), ageValue,
+                    rs.getLong(6), roles == null ? List.of() : Arrays.asList(roles.split(";")));
+            if (!removedDuringBuild.contains(id)) {
+                put(view);
+            }
+        }, from, to));
+    }
+
+    // Изменения из транзакций попадают в индекс только после коммита, вне транзакции - сразу
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        put(event.user());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserDeleted(UserDeletedEvent event) {
+        remove(event.id());
+    }
+
+    public UserView get(long id) {
+        Entry entry = users.get(id);
+        return entry != null ? entry.view : null;
+    }
+
+    public void put(UserView view) {
+        Entry entry = new Entry(view);
+        writes.readLock().lock();
+        try {
+            users.compute(view.id(), (id, old) -> {
+                // Более старая версия (например, из параллельной загрузки) не перетирает новую
+                if (old != null && old.view.version() != null && view.version() != null
+                        && old.view.version() > view.version()) {
+                    return old;
+                }
+                Set<String> oldTokens = old != null ? old.tokens() : Set.of();
+                Set<String> newTokens = entry.tokens();
+                for (String token : oldTokens) {
+                    if (!newTokens.contains(token)) {
+                        removePosting(tokenMap(token), token, id);
+                    }
+                }
+                for (String token : newTokens) {
+                    if (!oldTokens.contains(token)) {
+                        addPosting(tokenMap(token), token, id);
+                    }
+                }
+                List<String> oldRoles = old != null ? old.roles() : List.of();
+                for (String role : oldRoles) {
+                    if (!entry.roles().contains(role)) {
+                        removePosting(roles, role, id);
+                    }
+                }
+                for (String role : entry.roles()) {
+                    if (!oldRoles.contains(role)) {
+                        addPosting(roles, role, id);
+                    }
+                }
+                updateTopLists(id, entry, old != null, oldTokens, newTokens);
+                return entry;
+            });
+        } finally {
+            writes.readLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        if (!ready) {
+            removedDuringBuild.add(id);
+        }
+        writes.readLock().lock();
+        try {
+            users.computeIfPresent(id, (key, old) -> {
+                Set<String> oldTokens = old.tokens();
+                for (String token : oldTokens) {
+                    removePosting(tokenMap(token), token, key);
+                }
+                for (String role : old.roles()) {
+                    removePosting(roles, role, key);
+                }
+                updateTopLists(key, null, true, oldTokens, Set.of());
+                return null;
+            });
+        } finally {
+            writes.readLock().unlock();
+        }
+    }
+
+    // Пересчёт места пользователя во всех списках лучших для префиксов его старых и новых токенов
+    private void updateTopLists(long id, Entry entry, boolean listed, Set<String> oldTokens, Set<String> newTokens) {
+        if (topLists.isEmpty()) {
+            return;
+        }
+        Set<String> updated = new HashSet<>();
+        for (Set<String> tokens : List.of(oldTokens, newTokens)) {
+            for (String token : tokens) {
+                for (int length = 1; length <= token.length(); length++) {
+                    String prefix = token.substring(0, length);
+                    TopList list = topLists.get(prefix);
+                    if (list != null && updated.add(prefix)) {
+                        list.update(id, entry != null ? entry.rank(id, prefix) : null, listed);
+                    }
+                }
+            }
+        }
+    }
+
+    // Каждое слово запроса (через пробел) должно совпасть с началом какого-либо токена пользователя.
+    // Ранжирование точное: просматриваются все совпадения, а не первые попавшиеся
+    public List<UserView> search(String query, Integer minAge, Integer maxAge, String role, int limit) {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.toLowerCase(Locale.ROOT).trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        String roleName = role == null || role.isBlank() ? null
+                : role.startsWith("ROLE_") ? role : "ROLE_" + role.toUpperCase(Locale.ROOT);
+        int k = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        if (terms.size() == 1) {
+            List<UserView> result = searchTopList(terms.get(0), minAge, maxAge, roleName, k);
+            if (result != null) {
+                return result;
+            }
+        }
+        return searchPostings(terms, minAge, maxAge, roleName, k);
+    }
+
+    // Ответ из списка лучших; null - префикс редкий или после фильтров осталось меньше k, а список неполный
+    private List<UserView> searchTopList(String prefix, Integer minAge, Integer maxAge, String roleName, int k) {
+        TopList list = topLists.get(prefix);
+        if (list == null) {
+            if (postings(prefix, TOP_LIST_THRESHOLD) != null) {
+                return null;
+            }
+            list = createTopList(prefix);
+        }
+        TopList.Top top = list.read(prefix);
+        List<UserView> result = new ArrayList<>(k);
+        for (Ranked ranked : top.ranked()) {
+            Entry entry = users.get(ranked.id());
+            if (entry != null && accepts(entry.view, minAge, maxAge, roleName)) {
+                result.add(entry.view);
+                if (result.size() == k) {
+                    return result;
+                }
+            }
+        }
+        return top.complete() ? result : null;
+    }
+
+    private List<UserView> searchPostings(List<String> terms, Integer minAge, Integer maxAge, String roleName,
+                                          int k) {
+        Range rarest = null;
+        int rarestTerm = -1;
+        if (roleName != null) {
+            Postings postings = roles.get(roleName);
+            rarest = postings != null ? new Range(List.of(postings), postings.size()) : new Range(List.of(), 0);
+        }
+        for (int i = 0; i < terms.size(); i++) {
+            Range range = postings(terms.get(i), rarest != null ? rarest.size() : Long.MAX_VALUE);
+            if (range != null) {
+                rarest = range;
+                rarestTerm = i;
+            }
+        }
+
+        long[] candidates = union(rarest.postings());
+        for (int i = 0; i < terms.size() && candidates.length > 0; i++) {
+            if (i == rarestTerm) {
+                continue;
+            }
+            String term = terms.get(i);
+            Range range = postings(term, (long) candidates.length * LOOKUP_RATIO);
+            candidates = range != null ? intersect(candidates, range.postings()) : retainMatching(candidates, term);
+        }
+
+        PriorityQueue<Scored> top = new PriorityQueue<>(k + 1, Scored.WORST_FIRST);
+        for (long id : candidates) {
+            Entry entry = users.get(id);
+            if (entry == null || !accepts(entry.view, minAge, maxAge, roleName)) {
+                continue;
+            }
+            int score = entry.score(terms);
+            if (score > 0) {
+                top.add(new Scored(entry.view, score));
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+        }
+
+        List<UserView> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll().user);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static boolean accepts(UserView user, Integer minAge, Integer maxAge, String roleName) {
+        return !(minAge != null && (user.age() == null || user.age() < minAge)
+                || maxAge != null && (user.age() == null || user.age() > maxAge)
+                || roleName != null && (user.roles() == null || !user.roles().contains(roleName)));
+    }
+
+    // Списки токенов с этим префиксом, если в них вместе меньше limit id; иначе null - обход прерывается
+    private Range postings(String prefix, long limit) {
+        List<Postings> result = new ArrayList<>();
+        long size = 0;
+        NavigableMap<String, Postings> range = tokenMap(prefix)
+                .subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        for (Postings postings : range.values()) {
+            size += postings.size();
+            if (size >= limit) {
+                return null;
+            }
+            result.add(postings);
+        }
+        return new Range(result, size);
+    }
+
+    // Только буквы или только цифры - среди частей слов, остальное - среди слов и полей целиком
+    private ConcurrentSkipListMap<String, Postings> tokenMap(String token) {
+        boolean digits = !token.isEmpty() && Character.isDigit(token.charAt(0));
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (!Character.isLetterOrDigit(c) || Character.isDigit(c) != digits) {
+                return phrases;
+            }
+        }
+        return tokens;
+    }
+
+    // Отсортированные id без повторов: пользователь бывает в нескольких токенах диапазона ("ivan" и "ivanov")
+    private static long[] union(List<Postings> range) {
+        List<long[]> parts = new ArrayList<>();
+        int total = 0;
+        for (Postings postings : range) {
+            long[] part = postings.snapshot();
+            parts.add(part);
+            total += part.length;
+        }
+        if (parts.size() <= 1) {
+            return parts.isEmpty() ? new long[0] : parts.get(0);
+        }
+        if (parts.size() <= MERGE_PARTS) {
+            long[] ids = parts.get(0);
+            for (int p = 1; p < parts.size(); p++) {
+                ids = merge(ids, parts.get(p));
+            }
+            return ids;
+        }
+        long[] ids = new long[total];
+        int at = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, ids, at, part.length);
+            at += part.length;
+        }
+        Arrays.sort(ids);
+        int unique = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (unique == 0 || ids[i] != ids[unique - 1]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return unique == ids.length ? ids : Arrays.copyOf(ids, unique);
+    }
+
+    private static long[] merge(long[] left, long[] right) {
+        long[] ids = new long[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < left.length || j < right.length) {
+            long next = j == right.length || i < left.length && left[i] <= right[j] ? left[i] : right[j];
+            if (i < left.length && left[i] == next) {
+                i++;
+            }
+            if (j < right.length && right[j] == next) {
+                j++;
+            }
+            ids[size++] = next;
+        }
+        return size == ids.length ? ids : Arrays.copyOf(ids, size);
+    }
+
+    // Кандидаты, которые есть хотя бы в одном списке диапазона
+    private static long[] intersect(long[] candidates, List<Postings> range) {
+        boolean[] hit = new boolean[candidates.length];
+        for (Postings postings : range) {
+            postings.markHits(candidates, hit);
+        }
+        int kept = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            if (hit[i]) {
+                candidates[kept++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, kept);
+    }
+
+    private long[] retainMatching(long[] candidates, String term) {
+        int kept = 0;
+        for (long id : candidates) {
+            Entry entry = users.get(id);
+            if (entry != null && entry.matches(term)) {
+                candidates[kept++] = id;
+            }
+        }
+        return Arrays.copyOf(candidates, kept);
+    }
+
+    private TopList createTopList(String prefix) {
+        writes.writeLock().lock();
+        try {
+            return topLists.computeIfAbsent(prefix, key -> new TopList(rankAll(key)));
+        } finally {
+            writes.writeLock().unlock();
+        }
+    }
+
+    // Все совпадения с префиксом, лучший первым; вызывается под эксклюзивной блокировкой изменений
+    private List<Ranked> rankAll(String prefix) {
+        List<Ranked> result = new ArrayList<>();
+        for (long id : union(postings(prefix, Long.MAX_VALUE).postings())) {
+            Entry entry = users.get(id);
+            Ranked ranked = entry != null ? entry.rank(id, prefix) : null;
+            if (ranked != null) {
+                result.add(ranked);
+            }
+        }
+        result.sort(Ranked.BEST_FIRST);
+        return result;
+    }
+
+    // Поле целиком, его слова (буквы и цифры подряд) и части слов из одних букв или одних цифр:
+    // "ivan.petrov123" -> ivan.petrov123, ivan, petrov123, petrov, 123
+    private static void addTokens(String field, Set<String> result) {
+        result.add(field);
+        int wordStart = -1;
+        int runStart = -1;
+        for (int i = 0; i <= field.length(); i++) {
+            char c = i < field.length() ? field.charAt(i) : ' ';
+            boolean letterOrDigit = Character.isLetterOrDigit(c);
+            boolean runEnds = runStart >= 0
+                    && (!letterOrDigit || Character.isDigit(c) != Character.isDigit(field.charAt(runStart)));
+            if (runEnds) {
+                result.add(field.substring(runStart, i));
+                runStart = -1;
+            }
+            if (letterOrDigit && runStart < 0) {
+                runStart = i;
+            }
+            if (letterOrDigit && wordStart < 0) {
+                wordStart = i;
+            } else if (!letterOrDigit && wordStart >= 0) {
+                result.add(field.substring(wordStart, i));
+                wordStart = -1;
+            }
+        }
+    }
+
+    private static void addPosting(ConcurrentMap<String, Postings> map, String key, long id) {
+        while (true) {
+            Postings postings = map.computeIfAbsent(key, k -> new Postings());
+            if (postings.add(id)) {
+                return;
+            }
+            // Список опустел и снимается другим потоком: убираем его сами и берём новый
+            map.remove(key, postings);
+        }
+    }
+
+    // Опустевший список снимается условным remove: функции пересчёта карты могут вызываться повторно,
+    // поэтому изменять список внутри них нельзя
+    private static void removePosting(ConcurrentMap<String, Postings> map, String key, long id) {
+        Postings postings = map.get(key);
+        if (postings != null && postings.remove(id)) {
+            map.remove(key, postings);
+        }
+    }
+
+    // Запись индекса: исходное представление и поля в нижнем регистре, посчитанные один раз
+    private static final class Entry {
+        private final UserView view;
+        private final String username;
+        private final String name;
+        private final String lastName;
+
+        Entry(UserView view) {
+            this.view = view;
+            this.username = lower(view.username());
+            this.name = lower(view.name());
+            this.lastName = lower(view.lastName());
+        }
+
+        Set<String> tokens() {
+            Set<String> result = new HashSet<>();
+            for (String field : new String[]{username, name, lastName}) {
+                if (!field.isEmpty()) {
+                    addTokens(field, result);
+                }
+            }
+            return result;
+        }
+
+        List<String> roles() {
+            return view.roles() != null ? view.roles() : List.of();
+        }
+
+        boolean matches(String term) {
+            return termScore(term) > 0;
+        }
+
+        // Место в списке лучших по префиксу; null - префикс не совпадает
+        Ranked rank(long id, String prefix) {
+            int score = termScore(prefix);
+            return score > 0 ? new Ranked(id, score, view.username().length()) : null;
+        }
+
+        // Совпадение с полем целиком важнее начала поля, начало поля важнее начала слова; логин весит больше имени
+        int score(List<String> terms) {
+            int total = 0;
+            for (String term : terms) {
+                int best = termScore(term);
+                if (best == 0) {
+                    return 0;
+                }
+                total += best;
+            }
+            return total;
+        }
+
+        private int termScore(String term) {
+            return Math.max(fieldScore(username, term, 3),
+                    Math.max(fieldScore(name, term, 2), fieldScore(lastName, term, 2)));
+        }
+
+        private static int fieldScore(String value, String term, int weight) {
+            if (value.equals(term)) {
+                return 10 * weight;
+            }
+            if (value.startsWith(term)) {
+                return 5 * weight;
+            }
+            // Начало слова внутри поля - без выделения подстрок
+            for (int i = 1; i + term.length() <= value.length(); i++) {
+                if (!Character.isLetterOrDigit(value.charAt(i - 1)) && value.startsWith(term, i)) {
+                    return 2 * weight;
+                }
+            }
+            return 0;
+        }
+
+        private static String lower(String value) {
+            return value == null ? "" : value.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private record Range(List<Postings> postings, long size) {
+    }
+
+    private record Scored(UserView user, int score) {
+        // Худший наверху кучи: меньший балл, затем более длинный логин, затем больший id
+        static final Comparator<Scored> WORST_FIRST = Comparator.<Scored>comparingInt(s -> s.score)
+                .thenComparing(s -> -s.user.username().length())
+                .thenComparing(s -> -s.user.id());
+    }
+
+    // Позиция в списке лучших: тот же порядок, что у Scored, но без ссылки на представление
+    private record Ranked(long id, int score, int usernameLength) {
+        static final Comparator<Ranked> BEST_FIRST = Comparator.<Ranked>comparingInt(r -> -r.score)
+                .thenComparingInt(Ranked::usernameLength)
+                .thenComparingLong(Ranked::id);
+    }
+
+    // Лучшие пользователи для префикса, лучший первым. Пока complete, в списке все совпадающие;
+    // иначе - верх рейтинга не короче MAX_LIMIT, а короче - пересчёт при следующем чтении
+    private final class TopList {
+        private final List<Ranked> ranked = new ArrayList<>();
+        private boolean complete;
+        private boolean stale;
+
+        record Top(List<Ranked> ranked, boolean complete) {
+        }
+
+        TopList(List<Ranked> all) {
+            fill(all);
+        }
+
+        // rank == null - пользователь больше не совпадает с префиксом; listed - он мог быть в списке
+        synchronized void update(long id, Ranked rank, boolean listed) {
+            if (listed) {
+                ranked.removeIf(r -> r.id() == id);
+            }
+            if (rank != null && !stale
+                    && (complete || Ranked.BEST_FIRST.compare(rank, ranked.get(ranked.size() - 1)) < 0)) {
+                int at = Collections.binarySearch(ranked, rank, Ranked.BEST_FIRST);
+                ranked.add(-at - 1, rank);
+                if (ranked.size() > TOP_CAPACITY) {
+                    ranked.remove(ranked.size() - 1);
+                    complete = false;
+                }
+            }
+            if (!complete && ranked.size() < MAX_LIMIT) {
+                stale = true;
+            }
+        }
+
+        Top read(String prefix) {
+            synchronized (this) {
+                if (!stale) {
+                    return new Top(List.copyOf(ranked), complete);
+                }
+            }
+            // Эксклюзивная блокировка берётся до блокировки списка: изменения берут их в том же порядке
+            writes.writeLock().lock();
+            try {
+                synchronized (this) {
+                    if (stale) {
+                        fill(rankAll(prefix));
+                    }
+                    return new Top(List.copyOf(ranked), complete);
+                }
+            } finally {
+                writes.writeLock().unlock();
+            }
+        }
+
+        private void fill(List<Ranked> all) {
+            ranked.clear();
+            ranked.addAll(all.subList(0, Math.min(all.size(), TOP_CAPACITY)));
+            complete = all.size() <= TOP_CAPACITY;
+            stale = false;
+        }
+    }
+
+    // Отсортированный список id для одного токена: массив long без упаковки
+    private static final class Postings {
+        private long[] ids = new long[1];
+        private int size;
+        // Опустел и снимается с карты: добавлять в него нельзя, иначе id потеряется вместе с ним
+        private boolean removed;
+
+        // false - список уже снят, нужно взять из карты новый
+        synchronized boolean add(long id) {
+            if (removed) {
+                return false;
+            }
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                int insert = -at - 1;
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                System.arraycopy(ids, insert, ids, insert + 1, size - insert);
+                ids[insert] = id;
+                size++;
+            }
+            return true;
+        }
+
+        // true - список опустел и снят, его нужно убрать из карты
+        synchronized boolean remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+            if (size == 0 && !removed) {
+                removed = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        // Отмечает кандидатов из списка: слиянием при сравнимых длинах, иначе двоичным поиском по большему
+        synchronized void markHits(long[] candidates, boolean[] hit) {
+            if ((long) size * MERGE_RATIO >= candidates.length && (long) candidates.length * MERGE_RATIO >= size) {
+                int i = 0;
+                int j = 0;
+                while (i < size && j < candidates.length) {
+                    if (ids[i] < candidates[j]) {
+                        i++;
+                    } else if (ids[i] > candidates[j]) {
+                        j++;
+                    } else {
+                        hit[j++] = true;
+                        i++;
+                    }
+                }
+            } else if (size < candidates.length) {
+                for (int i = 0; i < size; i++) {
+                    int at = Arrays.binarySearch(candidates, ids[i]);
+                    if (at >= 0) {
+                        hit[at] = true;
+                    }
+                }
+            } else {
+                for (int i = 0; i < candidates.length; i++) {
+                    if (!hit[i] && Arrays.binarySearch(ids, 0, size, candidates[i]) >= 0) {
+                        hit[i] = true;
+                    }
+                }
+            }
+        }
+
+        // Копия: обход идёт без блокировки списка
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -1,12 +1,29 @@
 package ru.itmentor.spring.boot_security.demo.service;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import ru.itmentor.spring.boot_security.demo.dto.UserPageKeys;
+import ru.itmentor.spring.boot_security.demo.dto.UserPatch;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
 import ru.itmentor.spring.boot_security.demo.model.User;
 
 import java.util.List;
 
 public interface UserService {
+    int DEFAULT_PAGE_SIZE = 50;
+    int MAX_PAGE_SIZE = 500;
+
     List<User> getAllUsers();
+    Slice<User> getUsersPage(Long afterId, int limit);
+    long countUsers();
+    Page<UserView> getUserViewsPage(String filter, String role, Pageable pageable);
+    UserPageKeys getUserPageKeys(Long afterId, int limit);
+    List<UserView> getUserViews(List<Long> ids, boolean withRoles);
+    UserView getUserView(long id, boolean withRoles);
+    Long getUserVersion(long id);
     void saveUser(User user);
+    long patchUser(long id, UserPatch patch);
     User getUserById(long id);
     void deleteUser(long id);
     User getUserByUsername(String username);
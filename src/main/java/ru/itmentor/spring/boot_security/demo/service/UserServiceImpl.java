@@ -1,15 +1,34 @@
 package ru.itmentor.spring.boot_security.demo.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.itmentor.spring.boot_security.demo.dto.UserPageKeys;
+import ru.itmentor.spring.boot_security.demo.dto.UserPatch;
+import ru.itmentor.spring.boot_security.demo.dto.UserVersion;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
 import ru.itmentor.spring.boot_security.demo.model.Role;
 import ru.itmentor.spring.boot_security.demo.model.User;
+import ru.itmentor.spring.boot_security.demo.repository.UserPatchRepository;
 import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -17,16 +36,117 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPatchRepository userPatchRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
     @Autowired
     private RoleService roleService;
 
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
-    @Transactional
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
-        return userRepository.findAll();
+        return userRepository.findAllWithRoles();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<User> getUsersPage(Long afterId, int limit) {
+        // Курсор по id: без OFFSET и без загрузки всей таблицы
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        long after = afterId != null ? afterId : 0L;
+        Pageable pageable = PageRequest.of(0, size);
+        Slice<Long> ids = userRepository.findIdsAfter(after, pageable);
+        List<User> users = ids.hasContent()
+                ? userRepository.findAllWithRolesByIdIn(ids.getContent())
+                : List.of();
+        return new SliceImpl<>(users, pageable, ids.hasNext());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long countUsers() {
+        return userRepository.count();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<UserView> getUserViewsPage(String filter, String role, Pageable pageable) {
+        String prefix = escapeLike(filter.trim().toLowerCase(Locale.ROOT)) + "%";
+        Page<Long> ids = userRepository.findIdsByFilter(prefix, role, pageable);
+        if (!ids.hasContent()) {
+            return new PageImpl<>(List.of(), pageable, ids.getTotalElements());
+        }
+        // Проекции приходят в порядке id - возвращаем порядок сортировки страницы
+        Map<Long, UserView> byId = new HashMap<>();
+        for (UserView view : getUserViews(ids.getContent(), true)) {
+            byId.put(view.id(), view);
+        }
+        List<UserView> views = new ArrayList<>(ids.getNumberOfElements());
+        for (Long id : ids) {
+            UserView view = byId.get(id);
+            if (view != null) {
+                views.add(view);
+            }
+        }
+        return new PageImpl<>(views, pageable, ids.getTotalElements());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UserPageKeys getUserPageKeys(Long afterId, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        long after = afterId != null ? afterId : 0L;
+        Slice<UserVersion> versions = userRepository.findVersionsAfter(after, PageRequest.of(0, size));
+
+        List<Long> ids = new ArrayList<>(versions.getNumberOfElements());
+        long hash = UserPageKeys.ETAG_SEED;
+        for (UserVersion version : versions) {
+            ids.add(version.getId());
+            hash = UserPageKeys.mix(hash, version.getId(), version.getVersion());
+        }
+        return new UserPageKeys(ids, versions.hasNext(), UserPageKeys.etag(hash, versions.hasNext()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UserView> getUserViews(List<Long> ids, boolean withRoles) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<UserView> views = userRepository.findViewsByIdIn(ids);
+        return withRoles ? attachRoles(views) : views;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UserView getUserView(long id, boolean withRoles) {
+        UserView view = userRepository.findViewById(id)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        return withRoles ? attachRoles(List.of(view)).get(0) : view;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Long getUserVersion(long id) {
+        return userRepository.findVersionById(id).orElse(null);
     }
 
     @Override
@@ -42,21 +162,97 @@ public class UserServiceImpl implements UserService {
                 // Пароль изменился - шифруем
                 user.setPassword(passwordEncoder.encode(user.getPassword()));
             }
+            // Форма могла не передать версию - берём текущую, чтобы merge не счёл пользователя новым
+            if (user.getVersion() == null) {
+                user.setVersion(existingUser.getVersion());
+            }
+            // Логин мог смениться - сбрасываем кэш и по старому имени
+            evictCaches(existingUser.getUsername());
         }
-        userRepository.save(user);
+        // flush сразу, чтобы в событие ушла уже увеличенная версия
+        User saved = userRepository.saveAndFlush(user);
+        evictCaches(user.getUsername());
+        eventPublisher.publishEvent(new UserChangedEvent(toView(saved)));
     }
 
+    @Override
+    public long patchUser(long id, UserPatch patch) {
+        // Нечего менять - версию не увеличиваем
+        if (patch.isEmpty()) {
+            Long version = userRepository.findVersionById(id)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            if (patch.version() != null && !patch.version().equals(version)) {
+                throw new ObjectOptimisticLockingFailureException(User.class, id);
+            }
+            return version;
+        }
+
+        // Неизвестная роль - ошибка до транзакции, как и при PUT; replaceRoles молча пропустил бы её
+        if (patch.roleIds() != null) {
+            roleService.findByIds(patch.roleIds());
+        }
+
+        // Хешируем до транзакции и только если прислан новый пароль
+        Map<String, Object> columns = new LinkedHashMap<>();
+        if (patch.username() != null) {
+            columns.put("username", patch.username());
+        }
+        if (patch.password() != null && !patch.password().isEmpty()) {
+            columns.put("password", passwordEncoder.encode(patch.password()));
+        }
+        if (patch.name() != null) {
+            columns.put("name", patch.name());
+        }
+        if (patch.lastName() != null) {
+            columns.put("lastname", patch.lastName());
+        }
+        if (patch.age() != null) {
+            columns.put("age", patch.age());
+        }
+
+        UserPatchRepository.Updated updated = transactionTemplate.execute(status -> {
+            UserPatchRepository.Updated result = userPatchRepository.update(id, columns, patch.version());
+            if (result == null) {
+                return null;
+            }
+            if (patch.roleIds() != null) {
+                userPatchRepository.replaceRoles(id, patch.roleIds());
+            }
+            // Строка для модели чтения целиком из этой транзакции, а не поверх её записи:
+            // параллельный PATCH других полей уже применён к строке, которую вернул UPDATE
+            return result.withRoles(userPatchRepository.findRoleNames(id));
+        });
+
+        if (updated == null) {
+            // Отличаем отсутствующего пользователя от устаревшей версии только на пути ошибки
+            if (userRepository.findVersionById(id).isEmpty()) {
+                throw new RuntimeException("User not found");
+            }
+            throw new ObjectOptimisticLockingFailureException(User.class, id);
+        }
+        // UPDATE шёл мимо Hibernate - сбрасываем его кэш второго уровня после коммита
+        secondLevelCache.evictUser(id);
+        evictCaches(updated.oldUsername());
+        evictCaches(updated.newUsername());
+        eventPublisher.publishEvent(new UserChangedEvent(updated.user()));
+        return updated.version();
+    }
+
+    // Не readOnly: выборка наполняет кэш второго уровня и должна идти на primary (см. UserRepository)
     @Override
     @Transactional
     public User getUserById(long id) {
-        return userRepository.findById(id)
+        return userRepository.findWithRolesById(id)
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
     @Override
     @Transactional
     public void deleteUser(long id) {
+        userRepository.findById(id)
+                .ifPresent(user -> evictCaches(user.getUsername()));
         userRepository.deleteById(id);
+        eventPublisher.publishEvent(new UserDeletedEvent(id));
     }
 
     @Override
@@ -70,9 +266,37 @@ public class UserServiceImpl implements UserService {
     public void updateUserRoles(Long userId, List<Long> roleIds) {
         User user = getUserById(userId);
         user.getRoles().clear();
-        for (Long roleId : roleIds) {
-            user.getRoles().add(roleService.findById(roleId));
+        user.getRoles().addAll(roleService.findByIds(roleIds));
+        User saved = userRepository.saveAndFlush(user);
+        evictCaches(user.getUsername());
+        eventPublisher.publishEvent(new UserChangedEvent(toView(saved)));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Роли для всей страницы одним запросом
+    private List<UserView> attachRoles(List<UserView> views) {
+        List<Long> ids = views.stream().map(UserView::id).collect(Collectors.toList());
+        Map<Long, List<String>> rolesByUser = new HashMap<>();
+        for (Object[] row : userRepository.findRoleNamesByUserIds(ids)) {
+            rolesByUser.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
         }
-        userRepository.save(user);
+        return views.stream()
+                .map(view -> view.withRoles(rolesByUser.getOrDefault(view.id(), List.of())))
+                .collect(Collectors.toList());
+    }
+
+    private static UserView toView(User user) {
+        return new UserView(user.getId(), user.getUsername(), user.getName(), user.getLastName(), user.getAge(),
+                user.getVersion(),
+                user.getRoles().stream().map(Role::getName).collect(Collectors.toList()));
+    }
+
+    // Все кэши, завязанные на пользователя, сбрасываются в одном месте
+    private void evictCaches(String username) {
+        credentialCache.evict(username);
+        userDetailsService.evict(username);
     }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+-- Schema changes on top of the original tables (ddl-auto is off and the schema is managed outside the app).
+-- Apply once per database before deploying this version, as the schema owner:
+--   psql -h <host> -U <owner> -d <db> -f src/main/resources/db/schema-upgrade.sql
+-- Every statement is idempotent. The indexes are built CONCURRENTLY, so writes to users are not blocked;
+-- run the file outside a transaction (psql's default). If a concurrent build fails, it leaves an INVALID
+-- index that IF NOT EXISTS skips: drop it and run the file again.
+-- The loadtest profile applies the same file through spring.sql.init on its embedded database
+
+-- Entity version for ETags and optimistic locking
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Admin page filter: prefix match on lower-cased username, name and last name
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_username_lower_idx ON users (lower(username) text_pattern_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_name_lower_idx ON users (lower(name) text_pattern_ops);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_lastname_lower_idx ON users (lower(lastname) text_pattern_ops);
@@ -0,0 +1,69 @@
+package ru.itmentor.spring.boot_security.demo.benchmark;
+
+import ru.itmentor.spring.boot_security.demo.model.Role;
+import ru.itmentor.spring.boot_security.demo.service.RoleIndex;
+import ru.itmentor.spring.boot_security.demo.service.RoleService;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// RoleService без БД для бенчмарков
+public class InMemoryRoleService implements RoleService {
+
+    private final List<Role> roles;
+    private final RoleIndex index;
+
+    public InMemoryRoleService(List<Role> roles) {
+        this.roles = List.copyOf(roles);
+        this.index = RoleIndex.of(roles.stream()
+                .sorted(Comparator.comparing(Role::getId))
+                .map(Role::getName)
+                .toList());
+    }
+
+    public static List<Role> defaultRoles() {
+        return List.of(new Role(1L, "ROLE_ADMIN", null), new Role(2L, "ROLE_USER", null));
+    }
+
+    @Override
+    public List<Role> getAllRoles() {
+        return roles;
+    }
+
+    @Override
+    public Role findByName(String name) {
+        return roles.stream()
+                .filter(role -> role.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Role not found: " + name));
+    }
+
+    @Override
+    public Role findById(Long id) {
+        return roles.stream()
+                .filter(role -> role.getId().equals(id))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Role not found with id: " + id));
+    }
+
+    @Override
+    public Set<Role> findByIds(Collection<Long> ids) {
+        Set<Role> result = new HashSet<>();
+        for (Long id : ids) {
+            result.add(findById(id));
+        }
+        return result;
+    }
+
+    @Override
+    public void refresh() {
+    }
+
+    @Override
+    public RoleIndex index() {
+        return index;
+    }
+}
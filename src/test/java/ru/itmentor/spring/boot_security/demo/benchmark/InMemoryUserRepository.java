@@ -0,0 +1,35 @@
+package ru.itmentor.spring.boot_security.demo.benchmark;
+
+import ru.itmentor.spring.boot_security.demo.model.User;
+import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// UserRepository без БД для бенчмарков: поиск по имени и id в памяти, остальные методы не поддерживаются
+public final class InMemoryUserRepository {
+
+    private InMemoryUserRepository() {
+    }
+
+    public static UserRepository of(Collection<User> users) {
+        Map<String, User> byUsername = users.stream().collect(Collectors.toMap(User::getUsername, Function.identity()));
+        Map<Long, User> byId = users.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByUsername" -> Optional.ofNullable(byUsername.get((String) args[0]));
+                    case "findById", "findWithRolesById" -> Optional.ofNullable(byId.get((Long) args[0]));
+                    case "count" -> (long) byId.size();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryUserRepository[" + byId.size() + " users]";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
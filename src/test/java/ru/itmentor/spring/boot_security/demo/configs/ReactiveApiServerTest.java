@@ -0,0 +1,161 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.web.reactive.server.HttpHandlerConnector;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.itmentor.spring.boot_security.demo.benchmark.InMemoryRoleService;
+import ru.itmentor.spring.boot_security.demo.controller.ReactiveRoleHandler;
+import ru.itmentor.spring.boot_security.demo.controller.ReactiveUserHandler;
+import ru.itmentor.spring.boot_security.demo.dto.RoleView;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.repository.ReactiveUserRepository;
+import ru.itmentor.spring.boot_security.demo.service.TokenService;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReactiveApiServerTest {
+
+	private static final List<UserView> USERS = LongStream.rangeClosed(1, 5)
+			.mapToObj(id -> new UserView(id, "user" + id, "Name", "Last", 30, 0L, List.of("ROLE_USER")))
+			.toList();
+
+	// Как в приложении: UserView с @JsonFilter без заданного фильтра сериализуется целиком
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.setFilterProvider(new SimpleFilterProvider().setFailOnUnknownId(false));
+	private final TokenService tokenService = new TokenService(
+			new ObjectMapper(), new InMemoryRoleService(InMemoryRoleService.defaultRoles()), "", Duration.ofMinutes(15), Duration.ofDays(7), Duration.ofDays(30));
+	private final WebTestClient client = newClient();
+
+	// Маршруты, фильтры и кодеки сервера без сокета; БД заменена списком пользователей
+	private WebTestClient newClient() {
+		ReactiveUserRepository repository = new StubRepository();
+		ReactiveApiServer server = new ReactiveApiServer(
+				new ReactiveUserHandler(repository, objectMapper),
+				new ReactiveRoleHandler(repository),
+				tokenService,
+				new AuthenticationMetrics(new SimpleMeterRegistry()),
+				objectMapper,
+				ObservationRegistry.NOOP,
+				"localhost", 0);
+		return WebTestClient.bindToServer(new HttpHandlerConnector(server.httpHandler())).build();
+	}
+
+	@Test
+	void rejectsMissingAndInvalidTokens() {
+		client.get().uri("/api/v2/users").exchange()
+				.expectStatus().isUnauthorized()
+				.expectHeader().valueEquals(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+		client.get().uri("/api/v2/users").header(HttpHeaders.AUTHORIZATION, "Bearer not-a-token").exchange()
+				.expectStatus().isUnauthorized();
+		client.get().uri("/api/v2/users")
+				.header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenService.createRefreshToken("user"))
+				.exchange()
+				.expectStatus().isUnauthorized();
+	}
+
+	@Test
+	void rolesRequireAdmin() {
+		client.get().uri("/api/v2/roles").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER")).exchange()
+				.expectStatus().isForbidden()
+				.expectBody().jsonPath("$.message").isEqualTo("Access denied");
+		client.get().uri("/api/v2/roles").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_ADMIN", "ROLE_USER"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.roles.length()").isEqualTo(2);
+	}
+
+	@Test
+	void pagesUsersByCursor() {
+		client.get().uri("/api/v2/users?limit=2").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER")).exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.users.length()").isEqualTo(2)
+				.jsonPath("$.users[0].id").isEqualTo(1)
+				.jsonPath("$.users[1].id").isEqualTo(2)
+				.jsonPath("$.hasMore").isEqualTo(true)
+				.jsonPath("$.nextCursor").isEqualTo(2);
+		client.get().uri("/api/v2/users?after=2&limit=5").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.users.length()").isEqualTo(3)
+				.jsonPath("$.users[0].id").isEqualTo(3)
+				.jsonPath("$.users[2].id").isEqualTo(5)
+				.jsonPath("$.hasMore").isEqualTo(false);
+		client.get().uri("/api/v2/users?limit=x").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER")).exchange()
+				.expectStatus().isBadRequest();
+		client.get().uri("/api/v2/users/9").header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER")).exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	void streamsUsersAsNdjson() {
+		List<UserView> streamed = client.get().uri("/api/v2/users?after=1")
+				.header(HttpHeaders.AUTHORIZATION, bearer("ROLE_USER"))
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+				.returnResult(String.class)
+				.getResponseBody()
+				.flatMapIterable(chunk -> List.of(chunk.split("\n")))
+				.filter(line -> !line.isBlank())
+				.map(this::readUser)
+				.collectList()
+				.block(Duration.ofSeconds(5));
+
+		assertEquals(List.of(2L, 3L, 4L, 5L), streamed.stream().map(UserView::id).toList());
+	}
+
+	private String bearer(String... roles) {
+		return "Bearer " + tokenService.createAccessToken("user", AuthorityUtils.createAuthorityList(roles));
+	}
+
+	private UserView readUser(String line) {
+		try {
+			return objectMapper.readValue(line, UserView.class);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final class StubRepository extends ReactiveUserRepository {
+
+		StubRepository() {
+			super(null, 500);
+		}
+
+		@Override
+		public Flux<UserView> findPage(long afterId, int limit) {
+			return Flux.fromIterable(USERS).filter(user -> user.id() > afterId).take(limit);
+		}
+
+		@Override
+		public Flux<UserView> streamAfter(long afterId) {
+			return Flux.fromIterable(USERS).filter(user -> user.id() > afterId);
+		}
+
+		@Override
+		public Mono<UserView> findById(long id) {
+			return Mono.justOrEmpty(USERS.stream().filter(user -> user.id() == id).findFirst());
+		}
+
+		@Override
+		public Flux<RoleView> findAllRoles() {
+			return Flux.just(new RoleView(1L, "ROLE_ADMIN"), new RoleView(2L, "ROLE_USER"));
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ReplicaRoutingDataSourceTest {
+
+	private final StubDataSource primary = new StubDataSource();
+	private final StubDataSource replica = new StubDataSource();
+
+	// Позиции WAL задаются тестом вместо запросов к PostgreSQL
+	private long primaryPosition = 100;
+	private long replayedPosition = 100;
+	private int replicaReads;
+
+	private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary,
+			List.of(new ReplicaRoutingDataSource.Replica("replica-1", replica)),
+			Duration.ofSeconds(5), Duration.ofMillis(500), Duration.ofMinutes(1)) {
+		@Override
+		protected long primaryWalPosition() {
+			return primaryPosition;
+		}
+
+		@Override
+		protected long replayedWalPosition(DataSource dataSource) {
+			return replayedPosition;
+		}
+
+		@Override
+		protected void onReplicaRead() {
+			replicaReads++;
+		}
+	};
+
+	@AfterEach
+	void clearAuthentication() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void readsFromPrimaryUntilReplicaIsChecked() throws Exception {
+		assertSame(primary.connection, routing.getConnection());
+
+		routing.checkReplicas();
+		assertSame(replica.connection, routing.getConnection());
+	}
+
+	@Test
+	void writerReadsFromPrimaryUntilReplicaReplaysTheCommit() throws Exception {
+		routing.checkReplicas();
+		Thread.sleep(2);
+		routing.recordWrite();
+		primaryPosition = 200;
+
+		// Реплика ещё не применила запись
+		Thread.sleep(2);
+		routing.checkReplicas();
+		assertSame(primary.connection, routing.getConnection());
+
+		replayedPosition = 200;
+		Thread.sleep(2);
+		routing.checkReplicas();
+		assertSame(replica.connection, routing.getConnection());
+	}
+
+	// Администратор меняет пароль ivan: сам ivan читает с primary, пока реплика не применит изменение,
+	// а чтения других клиентов с реплики помечаются, чтобы не наполнять кэши
+	@Test
+	void changedUserReadsFromPrimaryUntilReplicaReplaysTheCommit() throws Exception {
+		routing.checkReplicas();
+		Thread.sleep(2);
+		authenticate("admin");
+		routing.recordWrite();
+		routing.recordWrite("ivan");
+		primaryPosition = 200;
+		Thread.sleep(2);
+		routing.checkReplicas();
+
+		authenticate("ivan");
+		assertSame(primary.connection, routing.getConnection());
+		assertEquals(0, replicaReads);
+
+		authenticate("petr");
+		assertSame(replica.connection, routing.getConnection());
+		assertEquals(1, replicaReads);
+
+		replayedPosition = 200;
+		Thread.sleep(2);
+		routing.checkReplicas();
+		authenticate("ivan");
+		assertSame(replica.connection, routing.getConnection());
+	}
+
+	@Test
+	void unavailableReplicaFallsBackToPrimary() throws Exception {
+		routing.checkReplicas();
+		replica.failing = true;
+
+		assertSame(primary.connection, routing.getConnection());
+		assertFalse(routing.getReplicas().get(0).isHealthy());
+		assertSame(primary.connection, routing.getConnection());
+	}
+
+	private static void authenticate(String username) {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(username, null, AuthorityUtils.NO_AUTHORITIES));
+	}
+
+	private static final class StubDataSource extends AbstractDataSource {
+
+		private final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[]{Connection.class}, (proxy, method, args) -> null);
+		private boolean failing;
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (failing) {
+				throw new SQLException("connection refused");
+			}
+			return connection;
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			return getConnection();
+		}
+	}
+}
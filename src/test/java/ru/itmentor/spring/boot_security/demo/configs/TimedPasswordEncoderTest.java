@@ -0,0 +1,35 @@
+package ru.itmentor.spring.boot_security.demo.configs;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TimedPasswordEncoderTest {
+
+	@Test
+	void parsesStrengthFromHash() {
+		assertEquals(12, TimedPasswordEncoder.strengthOf("{bcrypt}$2a$12$abcdefghijklmnopqrstuv"));
+		assertEquals(4, TimedPasswordEncoder.strengthOf("$2b$04$abcdefghijklmnopqrstuv"));
+		assertEquals(-1, TimedPasswordEncoder.strengthOf("{noop}secret"));
+		assertEquals(-1, TimedPasswordEncoder.strengthOf("{bcrypt"));
+	}
+
+	@Test
+	void tagsMatchesWithStrengthOfCheckedHash() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TimedPasswordEncoder encoder = new TimedPasswordEncoder(new BCryptPasswordEncoder(5), registry, 5);
+		String legacy = new BCryptPasswordEncoder(4).encode("secret");
+
+		encoder.matches("secret", legacy);
+		encoder.matches("wrong", legacy);
+
+		assertEquals(1, registry.get("security.password.matches").tags("strength", "4", "result", "match")
+				.timer().count());
+		assertEquals(1, registry.get("security.password.matches").tags("strength", "4", "result", "mismatch")
+				.timer().count());
+		assertNull(registry.find("security.password.matches").tag("strength", "5").timer());
+	}
+}
@@ -0,0 +1,59 @@
+package ru.itmentor.spring.boot_security.demo.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.jupiter.api.Test;
+import ru.itmentor.spring.boot_security.demo.benchmark.InMemoryRoleService;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserPageSerializerTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new SimpleModule()
+			.addSerializer(UserPage.class, new UserPageSerializer(new InMemoryRoleService(InMemoryRoleService.defaultRoles()))));
+
+	@Test
+	void writesAllFields() throws Exception {
+		UserPage page = new UserPage(List.of(
+				new UserView(1L, "admin", "Admin", "Adminov", 30, 3L, List.of("ROLE_ADMIN", "ROLE_USER")),
+				new UserView(2L, "user", null, "", null, 0L, List.of("ROLE_CUSTOM"))),
+				true, 2L, "/api/users?after=2", null, UserView.FIELDS);
+
+		JsonNode json = objectMapper.readTree(objectMapper.writeValueAsBytes(page));
+
+		assertEquals("success", json.get("status").asText());
+		assertEquals(2, json.get("count").asInt());
+		assertTrue(json.get("hasMore").asBoolean());
+		assertEquals(2L, json.get("nextCursor").asLong());
+		assertFalse(json.has("total"));
+
+		JsonNode admin = json.get("users").get(0);
+		assertEquals("admin", admin.get("username").asText());
+		assertEquals(30, admin.get("age").asInt());
+		assertEquals(3L, admin.get("version").asLong());
+		assertEquals("ROLE_USER", admin.get("roles").get(1).asText());
+
+		JsonNode user = json.get("users").get(1);
+		assertTrue(user.get("name").isNull());
+		assertTrue(user.get("age").isNull());
+		assertEquals("ROLE_CUSTOM", user.get("roles").get(0).asText());
+	}
+
+	@Test
+	void writesOnlySelectedFields() throws Exception {
+		UserPage page = new UserPage(List.of(new UserView(1L, "admin", "Admin", "Adminov", 30, 3L)),
+				false, null, null, 1L, Set.of("id", "username"));
+
+		JsonNode user = objectMapper.readTree(objectMapper.writeValueAsBytes(page)).get("users").get(0);
+
+		assertEquals(2, user.size());
+		assertEquals(1L, user.get("id").asLong());
+		assertEquals("admin", user.get("username").asText());
+	}
+}
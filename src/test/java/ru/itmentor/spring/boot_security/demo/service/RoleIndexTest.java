@@ -0,0 +1,53 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoleIndexTest {
+
+	private final RoleIndex index = RoleIndex.of(List.of("ROLE_ADMIN", "ROLE_USER"));
+
+	@Test
+	void assignsBitsInOrderAndAcceptsShortNames() {
+		assertEquals(1L, index.bit("ROLE_ADMIN"));
+		assertEquals(2L, index.bit("ROLE_USER"));
+		assertEquals(1L, index.bit("ADMIN"));
+		assertEquals(0L, index.bit("ROLE_MISSING"));
+	}
+
+	@Test
+	void sharesAuthorityListsPerCombination() {
+		List<GrantedAuthority> both = index.authorities(3L);
+		assertSame(both, index.authorities(3L));
+		assertSame(both, index.authoritiesOf(List.of("ROLE_USER", "ROLE_ADMIN")));
+		assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"), both.stream().map(GrantedAuthority::getAuthority).toList());
+	}
+
+	@Test
+	void masksFlyweightsAndForeignAuthorities() {
+		assertEquals(3L, index.maskOf(index.authorities(3L)));
+		// Authorities не из индекса (старая сессия) узнаются по имени
+		assertEquals(2L, index.maskOf(AuthorityUtils.createAuthorityList("ROLE_USER", "SCOPE_read")));
+		// Короткое имя - не authority
+		assertEquals(0L, index.maskOf(AuthorityUtils.createAuthorityList("ADMIN")));
+
+		assertTrue(RoleIndex.hasAny(index.maskOf(index.authorities(2L)), index.bit("USER")));
+		assertFalse(RoleIndex.hasAny(index.maskOf(index.authorities(2L)), index.bit("ADMIN")));
+	}
+
+	@Test
+	void keepsUnknownTokenRolesAsPlainAuthorities() {
+		List<GrantedAuthority> authorities = index.authoritiesOf(List.of("ROLE_USER", "ROLE_AUDITOR"));
+		assertEquals(List.of("ROLE_USER", "ROLE_AUDITOR"),
+				authorities.stream().map(GrantedAuthority::getAuthority).toList());
+		assertEquals(2L, index.maskOf(authorities));
+	}
+}
@@ -0,0 +1,33 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketLimiterTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final TokenBucketLimiter limiter = new TokenBucketLimiter("test", 3, Duration.ofMinutes(1), 100,
+			Duration.ofMinutes(10), meterRegistry);
+
+	@Test
+	void allowsBurstThenRejects() {
+		assertEquals(0, limiter.tryAcquire("admin"));
+		assertEquals(0, limiter.tryAcquire("admin"));
+		assertEquals(0, limiter.tryAcquire("admin"));
+
+		long wait = limiter.tryAcquire("admin");
+		assertTrue(wait > 0 && wait <= Duration.ofMinutes(1).toNanos());
+
+		// Корзины независимы
+		assertEquals(0, limiter.tryAcquire("user"));
+
+		assertEquals(4.0, meterRegistry.get("security.ratelimit.requests").tag("result", "allowed").counter().count());
+		assertEquals(1.0, meterRegistry.get("security.ratelimit.requests").tag("result", "rejected").counter().count());
+	}
+}
@@ -0,0 +1,86 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import ru.itmentor.spring.boot_security.demo.benchmark.InMemoryRoleService;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TokenServiceTest {
+
+	private final RoleService roleService = new InMemoryRoleService(InMemoryRoleService.defaultRoles());
+	private final TokenService tokenService = new TokenService(
+			new ObjectMapper(), roleService, "", Duration.ofMinutes(15), Duration.ofDays(7), Duration.ofDays(30));
+
+	@Test
+	void accessTokenRoundTrip() {
+		String token = tokenService.createAccessToken("admin",
+				AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER"));
+
+		Map<String, Object> claims = tokenService.verify(token, TokenService.TYPE_ACCESS);
+
+		assertNotNull(claims);
+		assertEquals("admin", claims.get("sub"));
+		assertEquals(AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER").size(),
+				tokenService.authorities(claims).size());
+		// Роли из токена - общий список флайвейтов из RoleService, а не копия на каждый запрос
+		assertSame(roleService.index().authoritiesOf(List.of("ROLE_ADMIN", "ROLE_USER")),
+				tokenService.authorities(claims));
+	}
+
+	@Test
+	void rejectsTamperedToken() {
+		String token = tokenService.createAccessToken("user", AuthorityUtils.createAuthorityList("ROLE_USER"));
+		String forged = tokenService.createAccessToken("user", AuthorityUtils.createAuthorityList("ROLE_ADMIN"));
+		String[] parts = token.split("\\.");
+		String[] forgedParts = forged.split("\\.");
+
+		assertNull(tokenService.verify(parts[0] + "." + forgedParts[1] + "." + parts[2], TokenService.TYPE_ACCESS));
+	}
+
+	@Test
+	void refreshTokenIsNotAccessToken() {
+		String refresh = tokenService.createRefreshToken("user");
+
+		assertNull(tokenService.verify(refresh, TokenService.TYPE_ACCESS));
+		assertNotNull(tokenService.verify(refresh, TokenService.TYPE_REFRESH));
+	}
+
+	@Test
+	void rejectsExpiredToken() {
+		TokenService expired = new TokenService(new ObjectMapper(), roleService, "", Duration.ofSeconds(-1), Duration.ofDays(7),
+				Duration.ofDays(30));
+		String token = expired.createAccessToken("user", AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+		assertNull(expired.verify(token, TokenService.TYPE_ACCESS));
+	}
+
+	@Test
+	void refreshChainKeepsLoginTimeAndEndsAtMaxAge() {
+		String secret = Base64.getEncoder().encodeToString(new byte[32]);
+		TokenService issuer = new TokenService(new ObjectMapper(), roleService, secret, Duration.ofMinutes(15),
+				Duration.ofDays(7), Duration.ofDays(30));
+		TokenService strict = new TokenService(new ObjectMapper(), roleService, secret, Duration.ofMinutes(15),
+				Duration.ofDays(7), Duration.ofDays(1));
+		long loggedIn = System.currentTimeMillis() / 1000 - Duration.ofDays(2).getSeconds();
+
+		// Обновление переносит время входа, а не начинает цепочку заново
+		Map<String, Object> claims = issuer.verify(issuer.createRefreshToken("user", loggedIn), TokenService.TYPE_REFRESH);
+		assertNotNull(claims);
+		assertEquals(loggedIn, TokenService.authTime(claims));
+
+		// Токен ещё не истёк, но вход был раньше refresh-max-age
+		assertNull(strict.verify(issuer.createRefreshToken("user", loggedIn), TokenService.TYPE_REFRESH));
+		// Новый токен для такой цепочки выпускается уже истёкшим
+		assertNull(issuer.verify(strict.createRefreshToken("user", loggedIn), TokenService.TYPE_REFRESH));
+	}
+}
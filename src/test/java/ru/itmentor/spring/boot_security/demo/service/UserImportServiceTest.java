@@ -0,0 +1,34 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UserImportServiceTest {
+
+	@Test
+	void readsQuotedFieldsSpanningLines() throws Exception {
+		// Так поля с запятыми, кавычками и переводами строк пишет выгрузка CSV
+		UserImportService.CsvReader csv = new UserImportService.CsvReader(new StringReader(
+				"username,name\r\n"
+						+ "ivan,\"Ivan, \"\"the\"\"\r\nTerrible\"\r\n"
+						+ "\n"
+						+ "petr,\"a\rb\"\n"
+						+ "maria,Maria"));
+
+		assertEquals(List.of("username", "name"), csv.next());
+		assertEquals(1, csv.recordLine());
+		assertEquals(List.of("ivan", "Ivan, \"the\"\r\nTerrible"), csv.next());
+		assertEquals(2, csv.recordLine());
+		assertEquals(List.of(""), csv.next());
+		assertEquals(List.of("petr", "a\rb"), csv.next());
+		assertEquals(5, csv.recordLine());
+		assertEquals(List.of("maria", "Maria"), csv.next());
+		assertEquals(6, csv.recordLine());
+		assertNull(csv.next());
+	}
+}
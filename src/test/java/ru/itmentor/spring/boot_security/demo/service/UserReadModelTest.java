@@ -0,0 +1,132 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.itmentor.spring.boot_security.demo.benchmark.InMemoryRoleService;
+import ru.itmentor.spring.boot_security.demo.dto.UserPageKeys;
+import ru.itmentor.spring.boot_security.demo.dto.UserVersion;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+import ru.itmentor.spring.boot_security.demo.repository.UserRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserReadModelTest {
+
+	// Таблица users для сверки: fetch и findVersionsAfter читают её вместо БД
+	private final Map<Long, UserView> table = new TreeMap<>();
+	private final UserReadModel model = newModel();
+
+	private UserReadModel newModel() {
+		// БД не нужна: модель заполняется напрямую, без load
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		UserRepository repository = (UserRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+					if (!method.getName().equals("findVersionsAfter")) {
+						throw new UnsupportedOperationException(method.getName());
+					}
+					return versionsAfter((Long) args[0], (Pageable) args[1]);
+				});
+		// Порции по 2 строки: сверка проходит несколько страниц
+		return new UserReadModel(dataSource, new DataSourceTransactionManager(dataSource),
+				new InMemoryRoleService(InMemoryRoleService.defaultRoles()), repository, true, 2, Duration.ZERO) {
+			@Override
+			public UserView fetch(long id) {
+				UserView row = table.get(id);
+				if (row == null) {
+					remove(id);
+					return null;
+				}
+				put(row);
+				return get(id);
+			}
+		};
+	}
+
+	private SliceImpl<UserVersion> versionsAfter(long after, Pageable pageable) {
+		List<UserVersion> rows = table.values().stream()
+				.filter(user -> user.id() > after)
+				.<UserVersion>map(user -> new Version(user.id(), user.version()))
+				.toList();
+		boolean hasNext = rows.size() > pageable.getPageSize();
+		return new SliceImpl<>(hasNext ? rows.subList(0, pageable.getPageSize()) : rows, pageable, hasNext);
+	}
+
+	private record Version(Long getId, Long getVersion) implements UserVersion {
+	}
+
+	@Test
+	void storesUsersWithPackedRoles() {
+		model.put(new UserView(1L, "ivan", "Ivan", "Petrov", null, 0L, List.of("ROLE_USER", "ROLE_ADMIN")));
+
+		UserView user = model.get(1L);
+		assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"), user.roles());
+		assertNull(user.age());
+		assertTrue(model.get(1L, false).roles().isEmpty());
+		assertEquals(1L, model.getByUsername("ivan").id());
+	}
+
+	@Test
+	void appliesChangesByVersion() {
+		model.put(new UserView(1L, "ivan", "Ivan", "Petrov", 30, 1L, List.of("ROLE_USER")));
+		model.put(new UserView(1L, "john", "John", "Smith", 30, 2L, List.of("ROLE_USER")));
+		// Устаревшая версия не перетирает новую
+		model.put(new UserView(1L, "ivan", "Ivan", "Petrov", 30, 1L, List.of("ROLE_USER")));
+
+		assertEquals("john", model.get(1L).username());
+		assertNull(model.getByUsername("ivan"));
+
+		model.remove(1L);
+		assertNull(model.get(1L));
+		assertNull(model.getByUsername("john"));
+		assertEquals(0, model.size());
+	}
+
+	@Test
+	void pagesByCursorWithVersionEtag() {
+		for (long id = 1; id <= 5; id++) {
+			model.put(new UserView(id, "user" + id, "Name", "Last", 20, 0L, List.of("ROLE_USER")));
+		}
+
+		UserPageKeys first = model.getPageKeys(null, 2);
+		assertEquals(List.of(1L, 2L), first.ids());
+		assertTrue(first.hasMore());
+		UserPageKeys last = model.getPageKeys(4L, 2);
+		assertEquals(List.of(5L), last.ids());
+		assertEquals(List.of(5L), model.getViews(List.of(5L, 6L), true).stream().map(UserView::id).toList());
+
+		// Новая версия пользователя на странице меняет ETag
+		model.put(new UserView(2L, "user2", "Name", "Last", 21, 1L, List.of("ROLE_USER")));
+		assertNotEquals(first.etag(), model.getPageKeys(null, 2).etag());
+	}
+
+	@Test
+	void reconcilesWithTheTableByVersion() {
+		for (long id = 1; id <= 5; id++) {
+			table.put(id, new UserView(id, "user" + id, "Name", "Last", 20, id == 2 ? 1L : 0L, List.of("ROLE_USER")));
+		}
+		// В модели: 2 - старой версии, 4 нет (создан на другом узле), 6 уже удалён из таблицы
+		for (long id : new long[]{1, 2, 3, 5, 6}) {
+			model.put(new UserView(id, "user" + id, "Name", "Last", 20, 0L, List.of("ROLE_USER")));
+		}
+
+		assertEquals(3, model.reconcile());
+
+		assertEquals(1L, model.getVersion(2L));
+		assertEquals("user4", model.get(4L).username());
+		assertNull(model.get(6L));
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L), model.getPageKeys(null, 10).ids());
+		assertEquals(0, model.reconcile());
+	}
+}
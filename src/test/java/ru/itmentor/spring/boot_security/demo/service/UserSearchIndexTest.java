@@ -0,0 +1,127 @@
+package ru.itmentor.spring.boot_security.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.itmentor.spring.boot_security.demo.dto.UserView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserSearchIndexTest {
+
+	private final UserSearchIndex index = newIndex();
+
+	private static UserSearchIndex newIndex() {
+		// БД не нужна: индекс заполняется напрямую, без rebuild
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		return new UserSearchIndex(dataSource, new DataSourceTransactionManager(dataSource), 1, 1000);
+	}
+
+	@Test
+	void ranksExactAndPrefixMatches() {
+		index.put(new UserView(1L, "ivan", "Ivan", "Petrov", 30, 0L, List.of("ROLE_USER")));
+		index.put(new UserView(2L, "ivanov_petr", "Petr", "Ivanov", 40, 0L, List.of("ROLE_ADMIN")));
+		index.put(new UserView(3L, "maria", "Maria", "Sidorova", 25, 0L, List.of("ROLE_USER")));
+
+		assertEquals(List.of(1L, 2L), ids(index.search("Iva", null, null, null, 10)));
+		assertEquals(List.of(2L, 1L), ids(index.search("petr iv", null, null, null, 10)));
+		assertEquals(List.of(2L), ids(index.search("iv", 35, null, "admin", 10)));
+		assertEquals(List.of(1L), ids(index.search("iv", null, null, null, 1)));
+		// Префикс с разделителем ищется по полю целиком
+		assertEquals(List.of(2L), ids(index.search("ivanov_p", null, null, null, 10)));
+	}
+
+	@Test
+	void updatesAndRemovesIncrementally() {
+		index.put(new UserView(1L, "ivan", "Ivan", "Petrov", 30, 1L, List.of("ROLE_USER")));
+		index.put(new UserView(1L, "john", "John", "Smith", 30, 2L, List.of("ROLE_USER")));
+		// Устаревшая версия не перетирает новую
+		index.put(new UserView(1L, "ivan", "Ivan", "Petrov", 30, 1L, List.of("ROLE_USER")));
+
+		assertTrue(index.search("ivan", null, null, null, 10).isEmpty());
+		assertEquals(List.of(1L), ids(index.search("smi", null, null, null, 10)));
+
+		index.remove(1L);
+		assertTrue(index.search("john", null, null, null, 10).isEmpty());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void findsMatchesBeyondTheFirstPostingsOfEachTerm() {
+		// Оба слова встречаются у многих, но вместе - только у последнего пользователя
+		for (long id = 1; id <= 3000; id++) {
+			boolean both = id == 3000;
+			index.put(new UserView(id, "user" + id, id % 2 == 0 || both ? "Anna" : "Olga",
+					id % 2 == 1 || both ? "Andreeva" : "Orlova", 30, 0L, List.of("ROLE_USER")));
+		}
+
+		assertEquals(List.of(3000L), ids(index.search("anna andr", null, null, null, 10)));
+	}
+
+	@Test
+	void ranksFrequentPrefixesExactlyAfterRemovals() {
+		for (long id = 1; id <= 2500; id++) {
+			index.put(new UserView(id, "u" + id, "Anna", "Orlova", 30, 0L,
+					List.of(id == 999 ? "ROLE_ADMIN" : "ROLE_USER")));
+		}
+		// Совпадение с началом логина весит больше имени, хоть пользователь и добавлен последним
+		index.put(new UserView(2501L, "anna", "Olga", "Orlova", 30, 0L, List.of("ROLE_USER")));
+
+		assertEquals(List.of(2501L, 1L, 2L, 3L, 4L), ids(index.search("a", null, null, null, 5)));
+		// Администратор далеко за списком лучших: ответ из полного обхода
+		assertEquals(List.of(999L), ids(index.search("a", null, null, "admin", 10)));
+
+		for (long id = 1; id <= 150; id++) {
+			index.remove(id);
+		}
+		assertEquals(List.of(2501L, 151L, 152L), ids(index.search("a", null, null, null, 3)));
+		assertEquals(100, index.search("an", null, null, null, 100).size());
+	}
+
+	@Test
+	void keepsPostingsOfSharedTokensUnderConcurrentWrites() throws Exception {
+		// Частый префикс "sh" со списком лучших, который обновляется параллельно с записями
+		for (long id = 100; id < 2100; id++) {
+			index.put(new UserView(id, "f" + id, "Sharon", "Filler", 30, 0L, List.of("ROLE_USER")));
+		}
+		assertEquals(4, index.search("sh", null, null, null, 4).size());
+
+		int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				long id = t + 1;
+				futures.add(executor.submit(() -> {
+					// Каждый поток то добавляет, то удаляет своего пользователя: общий токен то пустеет, то нет
+					for (int i = 0; i < 20000; i++) {
+						index.put(new UserView(id, "shared" + id, "Shared", "Token", 30, (long) i, List.of("ROLE_USER")));
+						index.remove(id);
+					}
+					index.put(new UserView(id, "shared" + id, "Shared", "Token", 30, 20000L, List.of("ROLE_USER")));
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(List.of(1L, 2L, 3L, 4L), ids(index.search("shared", null, null, null, 10)));
+		assertEquals(List.of(1L, 2L, 3L, 4L), ids(index.search("sh", null, null, null, 4)));
+		assertEquals(List.of(1L, 2L, 3L, 4L), ids(index.search("token sha", null, null, null, 10)));
+	}
+
+	private static List<Long> ids(List<UserView> users) {
+		return users.stream().map(UserView::id).collect(Collectors.toList());
+	}
+}